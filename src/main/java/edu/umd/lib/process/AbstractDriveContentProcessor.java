@@ -0,0 +1,159 @@
+package edu.umd.lib.process;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+
+import edu.umd.lib.services.DriveChunkedDownloader;
+import edu.umd.lib.services.DriveContentCache;
+import edu.umd.lib.services.DriveContentIngester;
+import edu.umd.lib.services.GoogleDriveConnector;
+import edu.umd.lib.services.IngestPolicy;
+import edu.umd.lib.services.SpillBuffer;
+
+/**
+ * Base of the processors indexing the content of a file, which read the file
+ * and ingest its content the same way and only differ in the Solr request they
+ * build from it.
+ *
+ * @since 2.0
+ */
+public abstract class AbstractDriveContentProcessor extends AbstractSolrProcessor {
+
+  private static Logger log = Logger.getLogger(AbstractDriveContentProcessor.class);
+  private GoogleDriveConnector connector;
+  private DriveContentIngester ingester;
+  private DriveContentCache contentCache;
+  private IngestPolicy ingestPolicy;
+  private DriveChunkedDownloader downloader;
+  private boolean flagExtractionFailures;
+
+  /**
+   * @param config
+   * @param connector
+   * @param ingester
+   *          the ingester of file content, shared with the other processors
+   * @param contentCache
+   *          the cache of extracted content, or null to always download
+   * @param downloader
+   *          the downloader of file content, shared with the other processors
+   */
+  protected AbstractDriveContentProcessor(Map<String, String> config, GoogleDriveConnector connector,
+      DriveContentIngester ingester, DriveContentCache contentCache, DriveChunkedDownloader downloader) {
+    this.connector = connector;
+    this.ingester = ingester;
+    this.contentCache = contentCache;
+    this.ingestPolicy = new IngestPolicy(config);
+    this.downloader = downloader;
+    this.flagExtractionFailures = Boolean.parseBoolean(config.get("flagExtractionFailures"));
+  }
+
+  /**
+   * Builds the Solr request of the file
+   *
+   * @param exchange
+   * @param encoded
+   *          the Base64 encoded content, or null
+   * @param text
+   *          the extracted text, or null
+   * @return the request entity
+   * @throws JSONException
+   */
+  abstract SolrDocumentEntity buildEntity(Exchange exchange, SpillBuffer encoded, SpillBuffer text) throws JSONException;
+
+  @Override
+  Object generateMessage(Exchange exchange) throws Exception {
+    Drive service = connector.getDriveService();
+
+    // Get file & get its file type
+    String sourceID = exchange.getIn().getHeader("source_id", String.class);
+    File file = getFileMetadata(exchange, service, sourceID);
+    String sourceMimeType = file.getMimeType();
+    String fileName = file.getName();
+    Object messageBody = null;
+
+    if (sourceMimeType != null) {
+      log.debug("File size in Drive:" + file.getSize());
+      IngestPolicy.Action action = ingestPolicy.getAction(sourceMimeType, file.getSize());
+
+      if (action == IngestPolicy.Action.METADATA) {
+        log.debug("Indexing the metadata only of " + fileName);
+        exchange.getIn().setHeader("file_type", sourceMimeType);
+        if (flagExtractionFailures) {
+          exchange.getIn().setHeader("extraction_failed", false);
+        }
+        messageBody = buildEntity(exchange, null, null);
+      } else {
+        boolean encode = action == IngestPolicy.Action.FULL;
+
+        String checksum = exchange.getIn().getHeader("file_checksum", String.class);
+        String exportMimeType = DriveContentIngester.getExportMimeType(sourceMimeType);
+        DriveContentIngester.Content ingested = contentCache == null || exportMimeType != null ? null
+            : contentCache.get(checksum, encode, ingester.getTextLimit());
+        if (exportMimeType != null) {
+          InputStream media = service.files().export(sourceID, exportMimeType)
+              .executeMediaAsInputStream();
+          ingested = ingester.ingestExport(media, sourceMimeType, checksum);
+        } else if (ingested == null) {
+          InputStream media = downloader.open(service, sourceID, file.getSize());
+          ingested = ingester.ingest(media, fileName, checksum, encode);
+          if (contentCache != null && !ingested.isExtractionFailed()) {
+            contentCache.put(ingested, ingester.getTextLimit());
+          }
+        } else {
+          log.debug("Using cached content of " + fileName);
+        }
+        final DriveContentIngester.Content content = ingested;
+        exchange.getIn().setHeader("file_type", content.getFileType());
+        if (flagExtractionFailures) {
+          exchange.getIn().setHeader("extraction_failed", content.isExtractionFailed());
+        }
+
+        exchange.addOnCompletion(new SynchronizationAdapter() {
+          @Override
+          public void onDone(Exchange exchange) {
+            content.delete();
+          }
+        });
+
+        messageBody = buildEntity(exchange, content.getEncoded(), content.getText());
+      }
+
+    }
+    return messageBody;
+  }
+
+  /**
+   * Returns the name, MIME type and size of the file; Google documents have
+   * no size. These are sent in the exchange headers when the poller already
+   * has them, otherwise they are fetched from Drive.
+   *
+   * @param exchange
+   * @param service
+   * @param sourceID
+   * @return the file metadata
+   * @throws IOException
+   */
+  private File getFileMetadata(Exchange exchange, Drive service, String sourceID) throws IOException {
+    String fileName = exchange.getIn().getHeader("file_name", String.class);
+    String mimeType = exchange.getIn().getHeader("mime_type", String.class);
+    Long fileSize = exchange.getIn().getHeader("file_size", Long.class);
+    if (fileName != null && mimeType != null
+        && (fileSize != null || DriveContentIngester.getExportMimeType(mimeType) != null)) {
+      return new File().setName(fileName).setMimeType(mimeType).setSize(fileSize);
+    }
+
+    return service.files().get(sourceID)
+        .setFields("name,mimeType,size")
+        .setSupportsAllDrives(true)
+        .execute();
+  }
+}
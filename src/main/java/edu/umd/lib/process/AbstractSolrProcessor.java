@@ -7,11 +7,17 @@ import org.apache.log4j.Logger;
 public abstract class AbstractSolrProcessor implements Processor {
   private static Logger log = Logger.getLogger(AbstractSolrProcessor.class);
 
-  abstract String generateMessage(Exchange exchange) throws Exception;
+  /**
+   * @param exchange
+   * @return the body of the Solr request, either a JSON string or an HTTP
+   *         entity writing the JSON into the request
+   * @throws Exception
+   */
+  abstract Object generateMessage(Exchange exchange) throws Exception;
 
   @Override
   public void process(Exchange exchange) throws Exception {
-    String messageBody = generateMessage(exchange);
+    Object messageBody = generateMessage(exchange);
     log.debug("Json msg: " + messageBody);
     exchange.getIn().setBody(messageBody);
   }
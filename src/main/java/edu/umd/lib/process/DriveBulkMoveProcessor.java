@@ -0,0 +1,31 @@
+package edu.umd.lib.process;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.log4j.Logger;
+
+/**
+ * Generates the Solr atomic updates for a batch of files whose paths changed
+ * because a parent folder was renamed or moved. The exchange body holds one
+ * map of move_file headers per file.
+ */
+public class DriveBulkMoveProcessor extends AbstractSolrProcessor {
+  private static Logger log = Logger.getLogger(DriveBulkMoveProcessor.class);
+  private Map<String, String> config;
+
+  public DriveBulkMoveProcessor(Map<String, String> config) {
+    this.config = config;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  String generateMessage(Exchange exchange) throws Exception {
+    List<Map<String, String>> files = exchange.getIn().getBody(List.class);
+    log.debug("Moving " + files.size() + " files");
+    String messageBody = SolrJsonGenerator.moveFilesJson(files);
+    return messageBody;
+  }
+
+}
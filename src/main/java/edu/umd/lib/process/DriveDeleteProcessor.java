@@ -20,7 +20,12 @@ public class DriveDeleteProcessor extends AbstractSolrProcessor {
 
   @Override
   public String generateMessage(Exchange exchange) throws Exception {
-    String messageBody = SolrJsonGenerator.deleteJson(exchange);
+    String messageBody;
+    if ("delete_folder".equals(exchange.getIn().getHeader("action", String.class))) {
+      messageBody = SolrJsonGenerator.deleteFolderJson(exchange);
+    } else {
+      messageBody = SolrJsonGenerator.deleteJson(exchange);
+    }
     return messageBody;
 
   }
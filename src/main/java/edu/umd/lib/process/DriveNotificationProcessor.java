@@ -0,0 +1,47 @@
+package edu.umd.lib.process;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.log4j.Logger;
+
+import edu.umd.lib.services.DriveChannelManager;
+
+/**
+ * Handles the push notifications posted by Drive for the watched change
+ * feeds. Notifications from unknown channels and the initial sync message of
+ * a channel are dropped. For a change notification, the ID of the notified
+ * drive and the time the notification was received are set as the driveId
+ * and notifiedAt headers.
+ *
+ * @since 2.0
+ */
+public class DriveNotificationProcessor implements Processor {
+
+  private static Logger log = Logger.getLogger(DriveNotificationProcessor.class);
+
+  private final DriveChannelManager channelManager;
+
+  public DriveNotificationProcessor(DriveChannelManager channelManager) {
+    this.channelManager = channelManager;
+  }
+
+  @Override
+  public void process(Exchange exchange) throws Exception {
+    String channelId = exchange.getIn().getHeader("X-Goog-Channel-ID", String.class);
+    String state = exchange.getIn().getHeader("X-Goog-Resource-State", String.class);
+    String driveId = channelManager.getDriveId(channelId);
+
+    exchange.getIn().removeHeader("driveId");
+    exchange.getIn().setBody("");
+    if (driveId == null) {
+      log.debug("Ignoring notification from unknown channel " + channelId);
+    } else if ("sync".equals(state)) {
+      log.debug("Notification channel " + channelId + " is active");
+    } else {
+      log.info("Change notification received for drive " + driveId);
+      exchange.getIn().setHeader("driveId", driveId);
+      exchange.getIn().setHeader("notifiedAt", System.currentTimeMillis());
+    }
+  }
+
+}
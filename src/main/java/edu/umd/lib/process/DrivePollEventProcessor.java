@@ -1,8 +1,5 @@
 package edu.umd.lib.process;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -12,10 +9,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
@@ -23,13 +25,18 @@ import org.apache.camel.Processor;
 import org.apache.camel.ProducerTemplate;
 import org.apache.camel.impl.DefaultExchange;
 import org.apache.camel.impl.DefaultMessage;
+import org.apache.camel.util.ServiceHelper;
 import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.json.JSONException;
 
 import com.google.api.client.util.DateTime;
@@ -41,6 +48,14 @@ import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
 import com.google.api.services.drive.model.StartPageToken;
 
+import edu.umd.lib.services.DriveAcronymMapping;
+import edu.umd.lib.services.DriveChannelManager;
+import edu.umd.lib.services.DriveContentIngester;
+import edu.umd.lib.services.DriveFolderCache;
+import edu.umd.lib.services.DriveLoadCheckpoint;
+import edu.umd.lib.services.DriveMetadataBatcher;
+import edu.umd.lib.services.DriveRateLimiter;
+import edu.umd.lib.services.DriveTokenStore;
 import edu.umd.lib.services.GoogleDriveConnector;
 
 /**
@@ -56,10 +71,37 @@ public class DrivePollEventProcessor implements Processor {
   com.google.api.services.drive.Drive service;
   SolrClient client;
   ProducerTemplate producer;
+  DriveFolderCache folderCache;
+  DriveMetadataBatcher batcher;
+  ExecutorService pollExecutor;
+  DriveTokenStore tokenStore;
+  DriveAcronymMapping acronymMapping;
+  DriveChannelManager channelManager;
+  DriveRateLimiter rateLimiter;
+  final Object pollLock = new Object();
+  final Map<String, Long> lastDrivePolls = new ConcurrentHashMap<>();
   final static String categories[] = { "policies", "reports", "guidelines", "links", "workplans", "minutes" };
   final static String PROP_MIME_TYPE_FOLDER = "application/vnd.google-apps.folder";
   final static String PROP_TYPE_FILE = "FILES";
   final static String PROP_TYPE_FOLDER = "FOLDERS";
+  final static String DRIVE_TOKEN_PREFIX = "drivetoken_";
+  final static String LOAD_TOKEN_PREFIX = "loadtoken_";
+  final static String ALL_DRIVES_TOKEN_KEY = "changestoken_alldrives";
+  final static String CHANGES_MODE_ALL_DRIVES = "all_drives";
+  final static String LOAD_MODE_FLAT = "flat";
+  final static String FOLDER_UPDATE_MODE_BULK = "bulk";
+  final static String NOTIFICATION_MODE_PUSH = "push";
+  final static int BULK_UPDATE_SIZE = 500;
+  final static int INITIAL_PAGE_SIZE = 100;
+  final static int MAX_PAGE_SIZE = 1000;
+  final static int MAX_DRIVES_PAGE_SIZE = 100;
+  /** File fields read when listing the files of a folder or a drive */
+  final static String LISTED_FILE_FIELDS = "id,name,mimeType,parents,createdTime,modifiedTime,md5Checksum,size";
+  final static String FILE_LIST_FIELDS = "nextPageToken,files(" + LISTED_FILE_FIELDS + ")";
+  /** Change fields read when handling changes */
+  final static String CHANGE_LIST_FIELDS = "nextPageToken,newStartPageToken,changes(fileId,removed,file("
+      + LISTED_FILE_FIELDS + ",driveId,trashed))";
+  final static String DRIVE_LIST_FIELDS = "nextPageToken,drives(id,name)";
   final static Map<String, String> smartCharacters = new HashMap<>();
   static {
     smartCharacters.put("\u2013", "-");
@@ -81,10 +123,20 @@ public class DrivePollEventProcessor implements Processor {
   public DrivePollEventProcessor() {
   }
 
-  public DrivePollEventProcessor(Map<String, String> config) {
+  public DrivePollEventProcessor(Map<String, String> config, GoogleDriveConnector connector) {
     try {
       this.config = config;
-      service = new GoogleDriveConnector(config).getDriveService();
+      folderCache = new DriveFolderCache(Integer.parseInt(config.get("folderCacheSize")));
+      acronymMapping = new DriveAcronymMapping(Paths.get(config.get("driveAcronymProperties")));
+      tokenStore = new DriveTokenStore(Paths.get(config.get("tokenProperties")),
+          Integer.parseInt(config.get("tokenFlushInterval")));
+      service = connector.getDriveService();
+      rateLimiter = connector.getRateLimiter();
+      batcher = new DriveMetadataBatcher(service);
+      if (NOTIFICATION_MODE_PUSH.equals(config.get("notificationMode"))) {
+        channelManager = new DriveChannelManager(service, config.get("notificationAddress"),
+            Long.parseLong(config.get("channelTtl")) * 1000, Long.parseLong(config.get("channelRenewMargin")));
+      }
       String solrPath = config.get("solrScheme") + "://" + config.get("solrBaseUrl");
       log.debug(solrPath);
       client = new HttpSolrClient.Builder(solrPath).build();
@@ -96,109 +148,486 @@ public class DrivePollEventProcessor implements Processor {
 
   @Override
   public void process(Exchange exchange) throws Exception {
-    producer = exchange.getContext().createProducerTemplate();
-    if (service != null) {
-      poll();
-    } else {
+    // The timer and the notification routes both poll, possibly at the same
+    // time, and must share a single producer and executor
+    synchronized (this) {
+      if (producer == null || !ServiceHelper.isStarted(producer)) {
+        producer = exchange.getContext().createProducerTemplate();
+        // Stopped with the context
+        exchange.getContext().addService(producer, true);
+      }
+      if (pollExecutor == null) {
+        int parallelism = Integer.parseInt(config.get("pollParallelism"));
+        pollExecutor = exchange.getContext().getExecutorServiceManager()
+            .newFixedThreadPool(this, "DrivePoller", parallelism);
+      }
+    }
+    String driveId = exchange.getIn().getHeader("driveId", String.class);
+    if (service == null) {
       log.info(
           "Drive service has not been initialized. Please ensure that the Client Secret file exists and the Drive API has been enabled");
+    } else if (driveId != null) {
+      pollNotifiedDrive(driveId, exchange.getIn().getHeader("notifiedAt", Long.class));
+    } else {
+      poll();
     }
   }
 
   /**
-   * Connects to Drive and starts long polling Drive events. On an event, sends
-   * exchange to ActionListener and updates the poll token.
+   * @return the manager of the push notification channels, or null if push
+   *         notifications are not enabled
+   */
+  public DriveChannelManager getChannelManager() {
+    return channelManager;
+  }
+
+  /**
+   * Polls the change feed of a single Team Drive after a push notification.
+   * The poll is skipped if the drive has been polled since the notification
+   * was received, so a burst of notifications only triggers one poll.
    *
-   * @param service
+   * @param driveId
+   *          the notified drive, or {@link DriveChannelManager#ALL_DRIVES}
+   * @param notifiedAt
+   *          the time the notification was received
+   */
+  public void pollNotifiedDrive(String driveId, long notifiedAt) {
+    synchronized (pollLock) {
+      Long lastPoll = lastDrivePolls.get(driveId);
+      if (lastPoll != null && lastPoll >= notifiedAt) {
+        log.debug("Drive " + driveId + " already polled since the notification");
+        return;
+      }
+      if (DriveChannelManager.ALL_DRIVES.equals(driveId)) {
+        poll();
+        return;
+      }
+
+      try {
+        tokenStore.refresh();
+        if (loadDriveChangesToken(driveId) == null) {
+          log.debug("Ignoring notification for Drive " + driveId + " which has not been loaded");
+          return;
+        }
+        pollDriveChanges(new Drive().setId(driveId).setName(getDriveName(driveId)));
+      } catch (IOException e) {
+        log.error(e.getMessage());
+        e.printStackTrace();
+      }
+      flushTokens();
+    }
+  }
+
+  /**
+   * @param driveId
+   * @return the name of the Team Drive, from the folder cache if possible
+   * @throws IOException
+   */
+  private String getDriveName(String driveId) throws IOException {
+    DriveFolderCache.Entry root = folderCache.peek(driveId);
+    if (root != null) {
+      return root.getName();
+    }
+    String name = batcher.getDriveNames(Collections.singleton(driveId)).get(driveId);
+    if (name != null) {
+      folderCache.put(driveId, name, null);
+    }
+    return name;
+  }
+
+  /**
+   * Registers or renews the push notification channels of the polled change
+   * feeds, if push notifications are enabled
+   *
+   * @param teamDrives
+   */
+  private void renewChannels(List<Drive> teamDrives) {
+    if (channelManager == null) {
+      return;
+    }
+    Map<String, String> pageTokens = new HashMap<>();
+    if (CHANGES_MODE_ALL_DRIVES.equals(config.get("changesMode"))) {
+      pageTokens.put(DriveChannelManager.ALL_DRIVES, loadToken(ALL_DRIVES_TOKEN_KEY));
+    } else {
+      for (Drive teamDrive : teamDrives) {
+        String pageToken = loadDriveChangesToken(teamDrive.getId());
+        if (pageToken != null) {
+          pageTokens.put(teamDrive.getId(), pageToken);
+        }
+      }
+    }
+    channelManager.renewChannels(pageTokens);
+  }
+
+  /**
+   * Polls all Team Drives. Polls are serialized with the polls triggered by
+   * push notifications.
    */
   public void poll() {
-    Path tokenProperties = Paths.get(this.config.get("tokenProperties"));
+    synchronized (pollLock) {
+      pollAllDrives();
+    }
+  }
+
+  /**
+   * Connects to Drive and starts long polling Drive events. On an event, sends
+   * exchange to ActionListener and updates the poll token. The shared drives
+   * are polled concurrently by the poll executor.
+   */
+  private void pollAllDrives() {
     try {
-      if (Files.notExists(tokenProperties) || Files.size(tokenProperties) == 0) {
+      tokenStore.refresh();
+      if (tokenStore.isEmpty()) {
         loadAllFiles();
       } else {
         // Fetch incremental changes i.e. changes that have occurred since the
         // last polling action
+        List<Drive> teamDrives = new ArrayList<>();
         String drivePageToken = null;
         do {
           DriveList result = service.drives().list()
+              .setFields(DRIVE_LIST_FIELDS)
               .setPageToken(drivePageToken)
-              .setPageSize(100)
+              .setPageSize(MAX_DRIVES_PAGE_SIZE)
               .execute();
+          teamDrives.addAll(result.getDrives());
+          drivePageToken = result.getNextPageToken();
+        } while (drivePageToken != null);
+        log.debug("Number of Team Drives:" + teamDrives.size());
 
-          List<Drive> teamDrives = result.getDrives();
-          log.debug("Number of Team Drives:" + teamDrives.size());
+        // Checking for the addition of a new Team Drive. If a new team drive
+        // has been added with a published folder, we load the files
+        // inside the published folder
+        checkForNewTeamDrives(teamDrives);
 
-          // Checking for the addition of a new Team Drive. If a new team drive
-          // has been added with a published folder, we load the files
-          // inside the published folder
-          checkForNewTeamDrives(teamDrives, tokenProperties);
+        for (Drive teamDrive : teamDrives) {
+          folderCache.put(teamDrive.getId(), teamDrive.getName(), null);
+        }
 
-          for (Drive teamDrive : teamDrives) {
+        if (CHANGES_MODE_ALL_DRIVES.equals(config.get("changesMode"))) {
+          pollAllDrivesChanges(teamDrives);
+        } else {
+          if (loadToken(ALL_DRIVES_TOKEN_KEY) != null) {
+            migrateToDriveTokens(teamDrives);
+          }
+          pollEachDrive(teamDrives);
+        }
+        renewChannels(teamDrives);
+      }
+    } catch (Exception e) {
+      log.error(e.getMessage());
+      e.printStackTrace();
+    }
+    flushTokens();
+    log.info("Folder cache stats: " + folderCache.getStats());
+    if (rateLimiter != null) {
+      log.info("Drive rate limiter stats: " + rateLimiter.getStats());
+    }
 
-            String pageToken = loadDriveChangesToken(teamDrive.getId());
-
-            while (pageToken != null) {
-
-              log.info("Checking changes for Drive " + teamDrive.getName());
-
-              ChangeList changes = service.changes().list(pageToken)
-                  .setFields("changes,nextPageToken,newStartPageToken")
-                  .setIncludeItemsFromAllDrives(true)
-                  .setSupportsAllDrives(true)
-                  .setDriveId(teamDrive.getId())
-                  .setPageSize(100)
-                  .execute();
-              String changesType = getChangesType(changes);
-
-              for (Change change : changes.getChanges()) {
-                File changeItem = change.getFile();
-                if (changeItem != null) {
-                  boolean isGoogleDoc = chkIfGoogleDoc(changeItem.getMimeType());
-                  if (!isGoogleDoc) {
-                    String sourcePath = getSourcePath(changeItem);
-                    // We are interested only in the changes that occur inside
-                    // the published folder
-                    if ("published".equals(sourcePath.split("/")[2])) {
-                      log.info("Change detected for item: " + changeItem.getId() + ":" + changeItem.getName());
-                      log.info("Source Path of accessed file:" + sourcePath);
-                      // Delete event
-                      if (change.getRemoved() || changeItem.getTrashed()) {
-                        manageDeleteEvent(changeItem, sourcePath);
-                      } else if (changeItem.getMimeType().equals(PROP_MIME_TYPE_FOLDER)) {
-                        if (!"published".equals(changeItem.getName()) && PROP_TYPE_FOLDER.equals(changesType)) {
-                          log.debug("Folder Events");
-                          manageFolderEvents(changeItem, sourcePath);
-                        }
-                      } else {
-                        log.debug("File Events");
-                        manageFileEvents(changeItem, sourcePath);
-                      }
-                    } // End of published folder check
-                  } // End of isGoogleDoc check
-                } // End of null check
-              } // End of for loop for changes
-
-              // save latest page token
-              if (changes.getNewStartPageToken() != null) {
-                pageToken = changes.getNewStartPageToken();
-                log.debug("Page token for team drive:" + teamDrive.getName() + ":" + pageToken);
-                updateDriveChangesToken(teamDrive.getId(), pageToken);
-              }
+  }
 
-              pageToken = changes.getNextPageToken();
+  /**
+   * Polls the change feed of each Team Drive, up to the configured number of
+   * drives at a time, and waits until all drives have been polled
+   *
+   * @param teamDrives
+   * @throws InterruptedException
+   */
+  private void pollEachDrive(List<Drive> teamDrives) throws InterruptedException {
+    List<Future<?>> drivePolls = new ArrayList<>();
+    for (final Drive teamDrive : teamDrives) {
+      drivePolls.add(pollExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          pollDriveChanges(teamDrive);
+        }
+      }));
+    }
 
-            }
-          }
-          drivePageToken = result.getNextPageToken();
-        } while (drivePageToken != null);
+    for (Future<?> drivePoll : drivePolls) {
+      try {
+        drivePoll.get();
+      } catch (ExecutionException e) {
+        log.error(e.getCause().getMessage());
+        e.getCause().printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Fetches and handles the changes of all Team Drives from the single change
+   * feed of the service account. Changes to items that are not in a loaded
+   * Team Drive are filtered out.
+   * <p>
+   * When there is no token for the feed yet, the per-drive tokens are migrated:
+   * the start token of the feed is captured first, then the change feed of
+   * each drive is drained one last time, so that no change is lost in between.
+   *
+   * @param teamDrives
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public void pollAllDrivesChanges(List<Drive> teamDrives) throws IOException, InterruptedException {
+    lastDrivePolls.put(DriveChannelManager.ALL_DRIVES, System.currentTimeMillis());
+    String pageToken = loadToken(ALL_DRIVES_TOKEN_KEY);
+    if (pageToken == null) {
+      log.info("Migrating the per drive page tokens to the all drives change feed");
+      pageToken = service.changes().getStartPageToken()
+          .setSupportsAllDrives(true)
+          .execute()
+          .getStartPageToken();
+      pollEachDrive(teamDrives);
+      updateToken(ALL_DRIVES_TOKEN_KEY, pageToken);
+    }
+
+    int pageSize = INITIAL_PAGE_SIZE;
+    Set<String> loadedDriveIds = new HashSet<>();
+    for (Drive teamDrive : teamDrives) {
+      if (loadDriveChangesToken(teamDrive.getId()) != null) {
+        loadedDriveIds.add(teamDrive.getId());
+      }
+    }
+
+    while (pageToken != null) {
+      log.info("Checking changes for all Drives");
+
+      ChangeList changes = service.changes().list(pageToken)
+          .setFields(CHANGE_LIST_FIELDS)
+          .setIncludeItemsFromAllDrives(true)
+          .setSupportsAllDrives(true)
+          .setPageSize(pageSize)
+          .execute();
+      pageSize = nextPageSize(pageSize, changes.getNextPageToken());
+
+      List<Change> driveChanges = new ArrayList<>();
+      for (Change change : changes.getChanges()) {
+        File changeItem = change.getFile();
+        if (changeItem == null || loadedDriveIds.contains(changeItem.getDriveId())) {
+          driveChanges.add(change);
+        }
+      }
+      handleChanges(new ChangeList().setChanges(driveChanges));
+
+      // save latest page token
+      if (changes.getNewStartPageToken() != null) {
+        pageToken = changes.getNewStartPageToken();
+        log.debug("Page token for all drives:" + pageToken);
+        updateToken(ALL_DRIVES_TOKEN_KEY, pageToken);
+      }
+
+      pageToken = changes.getNextPageToken();
+    }
+  }
+
+  /**
+   * Switches back from the all drives change feed to one change feed per Team
+   * Drive. The start token of each drive is captured first, then the all
+   * drives change feed is drained one last time before the per-drive tokens
+   * replace it.
+   *
+   * @param teamDrives
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  private void migrateToDriveTokens(List<Drive> teamDrives) throws IOException, InterruptedException {
+    log.info("Migrating the all drives page token to per drive page tokens");
+    Map<String, String> startTokens = new HashMap<>();
+    for (Drive teamDrive : teamDrives) {
+      if (loadDriveChangesToken(teamDrive.getId()) != null) {
+        StartPageToken response = service.changes().getStartPageToken()
+            .setSupportsAllDrives(true)
+            .setDriveId(teamDrive.getId())
+            .execute();
+        startTokens.put(teamDrive.getId(), response.getStartPageToken());
+      }
+    }
+
+    pollAllDrivesChanges(teamDrives);
+
+    for (Map.Entry<String, String> startToken : startTokens.entrySet()) {
+      updateDriveChangesToken(startToken.getKey(), startToken.getValue());
+    }
+    updateToken(ALL_DRIVES_TOKEN_KEY, null);
+  }
+
+  /**
+   * Fetches and handles the changes of a single Team Drive since the last
+   * stored page token. The page token of the drive is only advanced once the
+   * changes of the page have been handled.
+   *
+   * @param teamDrive
+   */
+  public void pollDriveChanges(Drive teamDrive) {
+    lastDrivePolls.put(teamDrive.getId(), System.currentTimeMillis());
+    try {
+      String pageToken = loadDriveChangesToken(teamDrive.getId());
+      int pageSize = INITIAL_PAGE_SIZE;
+
+      while (pageToken != null) {
+
+        log.info("Checking changes for Drive " + teamDrive.getName());
+
+        ChangeList changes = service.changes().list(pageToken)
+            .setFields(CHANGE_LIST_FIELDS)
+            .setIncludeItemsFromAllDrives(true)
+            .setSupportsAllDrives(true)
+            .setDriveId(teamDrive.getId())
+            .setPageSize(pageSize)
+            .execute();
+        pageSize = nextPageSize(pageSize, changes.getNextPageToken());
+        handleChanges(changes);
+
+        // save latest page token
+        if (changes.getNewStartPageToken() != null) {
+          pageToken = changes.getNewStartPageToken();
+          log.debug("Page token for team drive:" + teamDrive.getName() + ":" + pageToken);
+          updateDriveChangesToken(teamDrive.getId(), pageToken);
+        }
+
+        pageToken = changes.getNextPageToken();
 
       }
     } catch (Exception e) {
       log.error(e.getMessage());
       e.printStackTrace();
     }
+  }
 
+  /**
+   * Handles a page of changes, sending the exchanges for the changes that
+   * occurred inside the published folder
+   *
+   * @param changes
+   */
+  private void handleChanges(ChangeList changes) {
+    String changesType = getChangesType(changes);
+    Map<String, String> oldFolderPaths = invalidateChangedFolders(changes);
+    Map<String, String> sourcePaths = getSourcePaths(getChangedItems(changes));
+
+    for (Change change : changes.getChanges()) {
+      File changeItem = change.getFile();
+      if (changeItem != null) {
+        boolean isGoogleDoc = chkIfGoogleDoc(changeItem.getMimeType());
+        if (!isGoogleDoc) {
+          String sourcePath = sourcePaths.get(changeItem.getId());
+          // We are interested only in the changes that occur inside
+          // the published folder
+          if ("published".equals(sourcePath.split("/")[2])) {
+            log.info("Change detected for item: " + changeItem.getId() + ":" + changeItem.getName());
+            log.info("Source Path of accessed file:" + sourcePath);
+            // Delete event
+            if (change.getRemoved() || changeItem.getTrashed()) {
+              manageDeleteEvent(changeItem, sourcePath, oldFolderPaths.get(changeItem.getId()));
+            } else if (changeItem.getMimeType().equals(PROP_MIME_TYPE_FOLDER)) {
+              if (!"published".equals(changeItem.getName()) && PROP_TYPE_FOLDER.equals(changesType)) {
+                log.debug("Folder Events");
+                manageFolderEvents(changeItem, sourcePath, oldFolderPaths.get(changeItem.getId()));
+              }
+            } else {
+              log.debug("File Events");
+              manageFileEvents(changeItem, sourcePath);
+            }
+          } // End of published folder check
+        } // End of isGoogleDoc check
+      } else if (Boolean.TRUE.equals(change.getRemoved()) && oldFolderPaths.containsKey(change.getFileId())) {
+        // A permanently removed folder carries no file metadata; its files are
+        // deleted under the path it had in the folder cache
+        String oldPath = oldFolderPaths.get(change.getFileId());
+        String[] paths = oldPath.split("/");
+        if (paths.length > 2 && "published".equals(paths[2])) {
+          log.info("Removed folder detected: " + change.getFileId() + ":" + oldPath);
+          sendFolderDeleteRequest(oldPath);
+        }
+      } // End of null check
+    } // End of for loop for changes
+  }
+
+  /**
+   * Returns the items in a page of changes whose source path needs to be
+   * resolved
+   *
+   * @param changes
+   */
+  private List<File> getChangedItems(ChangeList changes) {
+    List<File> items = new ArrayList<>();
+    if (changes.getChanges() != null) {
+      for (Change change : changes.getChanges()) {
+        File changeItem = change.getFile();
+        if (changeItem != null && !chkIfGoogleDoc(changeItem.getMimeType())) {
+          items.add(changeItem);
+        }
+      }
+    }
+    return items;
+  }
+
+  /**
+   * Removes the folders that have been renamed, moved or deleted in a page of
+   * changes from the folder cache. This is done before any of the changes in
+   * the page are handled, so that the source paths of files inside these
+   * folders are resolved against the current folder hierarchy.
+   *
+   * @param changes
+   * @return the paths the changed folders had before the changes, keyed by
+   *         folder ID, for the folders whose path could be resolved from the
+   *         cache. Permanently removed items are included if they are cached
+   *         folders.
+   */
+  private Map<String, String> invalidateChangedFolders(ChangeList changes) {
+    Map<String, String> oldFolderPaths = new HashMap<>();
+    List<Change> changesList = changes.getChanges();
+    if (changesList == null) {
+      return oldFolderPaths;
+    }
+
+    for (Change change : changesList) {
+      File changeItem = change.getFile();
+      String folderId = null;
+      if (changeItem == null) {
+        // Only folders are cached, so a cached removed item is a folder
+        folderId = change.getFileId();
+      } else if (PROP_MIME_TYPE_FOLDER.equals(changeItem.getMimeType())) {
+        folderId = changeItem.getId();
+      }
+      String oldPath = folderId == null ? null : getCachedFolderPath(folderId);
+      if (oldPath != null) {
+        oldFolderPaths.put(folderId, oldPath);
+      }
+    }
+
+    for (Change change : changesList) {
+      File changeItem = change.getFile();
+      if (changeItem == null) {
+        // Removed items do not carry file metadata
+        if (change.getFileId() != null) {
+          folderCache.invalidate(change.getFileId());
+        }
+      } else if (PROP_MIME_TYPE_FOLDER.equals(changeItem.getMimeType())) {
+        folderCache.invalidate(changeItem.getId());
+      }
+    }
+    return oldFolderPaths;
+  }
+
+  /**
+   * Resolves the path of a folder from the folder cache only
+   *
+   * @param folderId
+   * @return the path of the folder, or null if one of its ancestors is not
+   *         cached
+   */
+  private String getCachedFolderPath(String folderId) {
+    StringBuilder path = new StringBuilder();
+    String id = folderId;
+    while (id != null) {
+      DriveFolderCache.Entry entry = folderCache.peek(id);
+      if (entry == null) {
+        return null;
+      }
+      path.insert(0, "/" + entry.getName());
+      id = entry.getParentId();
+    }
+    return path.toString();
   }
 
   /**
@@ -261,63 +690,73 @@ public class DrivePollEventProcessor implements Processor {
       if (!chkIfGoogleDoc(changeItem.getMimeType()))
         sendNewFileRequest(changeItem, sourcePath);
     } else {
-      String savedFilePath = null;
-      String savedCheckSum = null;
-      String savedFileName = null;
-      if (!results.isEmpty()) {
-        savedFilePath = (String) results.get(0).getFieldValue("storagePath");
-        savedCheckSum = (String) results.get(0).getFieldValue("fileChecksum");
-        savedFileName = (String) results.get(0).getFieldValue("title");
-        log.debug(savedFilePath);
-        log.debug(savedCheckSum);
-        log.debug(savedFileName);
-      }
-      // Checking for file content update
-      String md5Checksum = changeItem.getMd5Checksum();
-      if (md5Checksum != null && !md5Checksum.equals(savedCheckSum)) {
-        log.debug("File update request");
-        sendUpdateContentRequest(changeItem);
-      }
+      handleIndexedFile(changeItem, sourcePath, results.get(0));
+    }
+  }
 
-      // Checking for file rename
-      if (savedFileName != null && !savedFileName.equals(changeItem.getName())) {
-        log.debug("File Rename request");
-        sendFileRenameRequest(sourcePath, changeItem);
-      }
+  /**
+   * Compares a Drive file with its indexed document, and sends the update,
+   * rename and move requests needed to bring the document up to date. Nothing
+   * is sent if the document is up to date.
+   *
+   * @param changeItem
+   * @param sourcePath
+   * @param indexed
+   *          the indexed document, with the storagePath, fileChecksum and
+   *          title fields
+   */
+  private void handleIndexedFile(File changeItem, String sourcePath, SolrDocument indexed) {
+    String savedFilePath = (String) indexed.getFieldValue("storagePath");
+    String savedCheckSum = (String) indexed.getFieldValue("fileChecksum");
+    String savedFileName = (String) indexed.getFieldValue("title");
+    log.debug(savedFilePath);
+    log.debug(savedCheckSum);
+    log.debug(savedFileName);
+
+    // Checking for file content update
+    String md5Checksum = getContentChecksum(changeItem);
+    if (md5Checksum != null && !md5Checksum.equals(savedCheckSum)) {
+      log.debug("File update request");
+      sendUpdateContentRequest(changeItem);
+    }
 
-      // For checking file move, we are comparing the paths
-      // without the file name.
-      // (we are skipping the filename because in the
-      // scenario that a file rename + file move event
-      // occurs we are already handling file rename
-      // separately, and if we keep the filename in the path
-      // while checking for the file move event, this event
-      // will be triggered even when the file rename occurs.
-      String serverFilePath = sourcePath.substring(0, sourcePath.lastIndexOf("/"));
-      String localFilePath = savedFilePath.substring(0, savedFilePath.lastIndexOf("/"));
-      // Checking for file move request
-      if (!serverFilePath.equals(localFilePath)) {
-        log.debug("File Move request");
-        sendFileMoveRequest(changeItem, sourcePath);
-      }
+    // Checking for file rename
+    if (savedFileName != null && !savedFileName.equals(changeItem.getName())) {
+      log.debug("File Rename request");
+      sendFileRenameRequest(sourcePath, changeItem);
+    }
+
+    // For checking file move, we are comparing the paths
+    // without the file name.
+    // (we are skipping the filename because in the
+    // scenario that a file rename + file move event
+    // occurs we are already handling file rename
+    // separately, and if we keep the filename in the path
+    // while checking for the file move event, this event
+    // will be triggered even when the file rename occurs.
+    String serverFilePath = sourcePath.substring(0, sourcePath.lastIndexOf("/"));
+    String localFilePath = savedFilePath.substring(0, savedFilePath.lastIndexOf("/"));
+    // Checking for file move request
+    if (!serverFilePath.equals(localFilePath)) {
+      log.debug("File Move request");
+      sendFileMoveRequest(changeItem, sourcePath);
     }
   }
 
   /**
-   * This method handles the delete event for files and directories
+   * This method handles the delete event for files and directories. The files
+   * under a deleted directory are removed from Solr by their storage path, so
+   * the directory does not need to be listed in Drive.
    *
    * @param changeItem
    * @param sourcePath
+   * @param oldPath
+   *          the path of the directory before the change, or null if unknown
    */
-  public void manageDeleteEvent(File changeItem, String sourcePath) {
+  public void manageDeleteEvent(File changeItem, String sourcePath, String oldPath) {
     if (PROP_MIME_TYPE_FOLDER.equals(changeItem.getMimeType())) {
-      log.info("Directory Delete request. Sending delete request for all files within the directory");
-      List<File> files = fetchFileList(changeItem.getId());
-      for (File file : files) {
-        if (!PROP_MIME_TYPE_FOLDER.equals(file.getMimeType())) {
-          sendDeleteRequest(file, getSourcePath(file));
-        }
-      }
+      log.info("Directory Delete request. Sending delete request for all files under the directory");
+      sendFolderDeleteRequest(oldPath != null ? oldPath : sourcePath);
     }
 
     if (!PROP_MIME_TYPE_FOLDER.equals(changeItem.getMimeType())) {
@@ -327,29 +766,158 @@ public class DrivePollEventProcessor implements Processor {
   }
 
   /**
-   * This method handles the folder event for moving and renaming
+   * This method handles the folder event for moving and renaming. In the bulk
+   * folder update mode, the paths of the indexed files under the folder are
+   * rewritten in Solr directly. Otherwise, or when the previous path of the
+   * folder is unknown or has no indexed files, every file under the folder is
+   * checked for changes.
    *
    * @param changeItem
    * @param sourcePath
+   * @param oldPath
+   *          the path of the folder before the change, or null if unknown
    */
-  public void manageFolderEvents(File changeItem, String sourcePath) {
+  public void manageFolderEvents(File changeItem, String sourcePath, String oldPath) {
+    if (FOLDER_UPDATE_MODE_BULK.equals(config.get("folderUpdateMode"))) {
+      if (oldPath == null) {
+        oldPath = findIndexedFolderPath(changeItem);
+      }
+      if (oldPath != null) {
+        if (oldPath.equals(sourcePath)) {
+          log.debug("Folder path unchanged:" + sourcePath);
+          return;
+        }
+        log.info("Directory Rename or Move request. Rewriting paths from " + oldPath + " to " + sourcePath);
+        if (rewriteFolderPaths(oldPath, sourcePath) > 0) {
+          return;
+        }
+      }
+    }
+
     log.info("Directory Rename or Move request. Sending request for all files within the directory");
     List<File> files = fetchFileList(changeItem.getId());
+    Map<String, String> sourcePaths = getSourcePaths(files);
     for (File file : files) {
       if (!PROP_MIME_TYPE_FOLDER.equals(file.getMimeType())) {
-        manageFileEvents(file, getSourcePath(file));
+        manageFileEvents(file, sourcePaths.get(file.getId()));
+      }
+    }
+  }
+
+  /**
+   * Finds the path a folder had when its files were indexed, from the indexed
+   * path of one of the files directly inside it
+   *
+   * @param folder
+   * @return the indexed path of the folder, or null if it cannot be found
+   */
+  private String findIndexedFolderPath(File folder) {
+    if (folder.getDriveId() == null) {
+      return null;
+    }
+    try {
+      FileList list = service.files().list()
+          .setQ("'" + folder.getId() + "' in parents and trashed=false and mimeType != '" + PROP_MIME_TYPE_FOLDER + "'")
+          .setFields("files(id)")
+          .setCorpora("drive")
+          .setIncludeItemsFromAllDrives(true)
+          .setSupportsAllDrives(true)
+          .setDriveId(folder.getDriveId())
+          .setPageSize(1)
+          .execute();
+      if (list.getFiles() == null || list.getFiles().isEmpty()) {
+        return null;
       }
+
+      SolrQuery query = new SolrQuery();
+      query.setQuery("id:" + ClientUtils.escapeQueryChars(list.getFiles().get(0).getId()));
+      query.setFields("storagePath");
+      SolrDocumentList results = client.query(query).getResults();
+      if (results == null || results.isEmpty()) {
+        return null;
+      }
+      String storagePath = (String) results.get(0).getFieldValue("storagePath");
+      return storagePath.substring(0, storagePath.lastIndexOf("/"));
+    } catch (Exception e) {
+      log.error(e.getMessage());
+      e.printStackTrace();
     }
+    return null;
   }
 
   /**
-   * This method is used to check if the file is a Google Doc
+   * Rewrites the path related fields of all the indexed files under a folder
+   * that has been renamed or moved. The affected documents are streamed from
+   * Solr with a cursor on their storage path prefix, and the new storage path,
+   * category, sub-category, group and Team Drive are computed locally and sent
+   * as batches of atomic updates.
+   *
+   * @param oldPath
+   *          the path of the folder before the change
+   * @param newPath
+   *          the path of the folder after the change
+   * @return the number of documents updated
+   */
+  public int rewriteFolderPaths(String oldPath, String newPath) {
+    String oldPrefix = sanitize(oldPath) + "/";
+    String newPrefix = sanitize(newPath) + "/";
+    int updated = 0;
+
+    SolrQuery query = new SolrQuery();
+    query.setQuery("storagePath:" + ClientUtils.escapeQueryChars(oldPrefix) + "*");
+    query.setFields("id,storagePath");
+    query.setRows(BULK_UPDATE_SIZE);
+    query.setSort(SolrQuery.SortClause.asc("id"));
+    String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+
+    try {
+      while (true) {
+        query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+        QueryResponse response = client.query(query);
+
+        List<Map<String, String>> docs = new ArrayList<>();
+        for (SolrDocument doc : response.getResults()) {
+          String storagePath = (String) doc.getFieldValue("storagePath");
+          HashMap<String, String> fields = new HashMap<>();
+          fields.put("source_id", (String) doc.getFieldValue("id"));
+          buildPathHeaders(newPrefix + storagePath.substring(oldPrefix.length()), fields);
+          docs.add(fields);
+        }
+
+        if (!docs.isEmpty()) {
+          HashMap<String, String> headers = new HashMap<>();
+          headers.put("action", "bulk_move");
+          sendActionExchange(headers, docs);
+          updated += docs.size();
+        }
+
+        String nextCursorMark = response.getNextCursorMark();
+        if (cursorMark.equals(nextCursorMark)) {
+          break;
+        }
+        cursorMark = nextCursorMark;
+      }
+    } catch (Exception e) {
+      log.error(e.getMessage());
+      e.printStackTrace();
+    }
+    log.info("Rewrote the paths of " + updated + " files under " + newPath);
+    return updated;
+  }
+
+  /**
+   * This method is used to check if the file is a Google Doc that cannot be
+   * indexed. Documents, spreadsheets and presentations are indexed through
+   * their text export.
    *
    * @param mimeType
    * @return boolean
    */
 
   public boolean chkIfGoogleDoc(String mimeType) {
+    if (DriveContentIngester.getExportMimeType(mimeType) != null) {
+      return false;
+    }
     if (mimeType.equals("application/vnd.google-apps.document")
         || mimeType.equals("application/vnd.google-apps.spreadsheet")
         || mimeType.equals("application/vnd.google-apps.drawing")
@@ -361,6 +929,22 @@ public class DrivePollEventProcessor implements Processor {
     return false;
   }
 
+  /**
+   * Returns the checksum telling if the content of a file changed. Google
+   * documents have no MD5 checksum, so their last modification time is used
+   * instead, and they are exported again whenever it changes.
+   *
+   * @param file
+   * @return the checksum, or null if there is none
+   */
+  private String getContentChecksum(File file) {
+    if (file.getMd5Checksum() == null && DriveContentIngester.getExportMimeType(file.getMimeType()) != null
+        && file.getModifiedTime() != null) {
+      return DriveContentIngester.EXPORT_CHECKSUM_PREFIX + file.getModifiedTime().toStringRfc3339();
+    }
+    return file.getMd5Checksum();
+  }
+
   /**
    * This method is used to check for new Team Drives that have been added after
    * the first run of this tool. It checks for new team drives, and creates them
@@ -369,47 +953,26 @@ public class DrivePollEventProcessor implements Processor {
    *
    * @param service
    * @param teamDrives
-   * @param tokenProperties
    * @throws JSONException
    */
 
-  public void checkForNewTeamDrives(List<Drive> teamDrives, Path tokenProperties) {
+  public void checkForNewTeamDrives(List<Drive> teamDrives) {
     try {
-      if (Files.exists(tokenProperties) && !Files.isDirectory(tokenProperties)) {
-        Properties props = new Properties();
-        FileInputStream in = new FileInputStream(tokenProperties.toFile());
-        props.load(in);
-        in.close();
-
-        if (teamDrives.size() > props.size()) {
-          for (Drive teamDrive : teamDrives) {
-            if (!props.containsKey("drivetoken_" + teamDrive.getId())) {
-              log.info("Team Drive ID:" + teamDrive.getId() + "\t Team Drive Name:" + teamDrive.getName());
-
-              File publishedFolder = accessPublishedFolder(teamDrive);
-
-              if (publishedFolder == null)
-                publishedFolder = createPublishedFolder(teamDrive);
-
-              accessPublishedFiles(publishedFolder, teamDrive);
-              StartPageToken response = service.changes().getStartPageToken()
-                  .setSupportsAllDrives(true)
-                  .setDriveId(teamDrive.getId())
-                  .execute();
-              updateDriveChangesToken(teamDrive.getId(), response.getStartPageToken());
+      int loadedDrives = 0;
+      for (String key : tokenStore.keys()) {
+        if (key.startsWith(DRIVE_TOKEN_PREFIX)) {
+          loadedDrives++;
+        }
+      }
 
-            }
+      if (teamDrives.size() > loadedDrives) {
+        for (Drive teamDrive : teamDrives) {
+          if (loadDriveChangesToken(teamDrive.getId()) == null) {
+            log.info("Team Drive ID:" + teamDrive.getId() + "\t Team Drive Name:" + teamDrive.getName());
+            loadTeamDriveOrResumeLater(teamDrive);
           }
         }
-
-        in.close();
       }
-    } catch (FileNotFoundException e) {
-      log.error("Properties file not found" + e.getMessage());
-      e.printStackTrace();
-    } catch (IOException e) {
-      log.error("Properties file cannot be opened" + e.getMessage());
-      e.printStackTrace();
     } catch (Exception e) {
       log.error(e.getMessage());
       e.printStackTrace();
@@ -461,6 +1024,21 @@ public class DrivePollEventProcessor implements Processor {
     sendActionExchange(headers, "");
   }
 
+  /**
+   * Sends a new message exchange to ActionListener requesting to delete all
+   * the indexed files under a folder, using a single Solr delete by query on
+   * their storage path
+   *
+   * @param folderPath
+   */
+  public void sendFolderDeleteRequest(String folderPath) {
+    HashMap<String, String> headers = new HashMap<>();
+
+    headers.put("action", "delete_folder");
+    headers.put("storage_path", sanitize(folderPath));
+    sendActionExchange(headers, "");
+  }
+
   /**
    * Sends a new message exchange to ActionListener requesting to move a file
    *
@@ -489,13 +1067,8 @@ public class DrivePollEventProcessor implements Processor {
 
     try {
       String pageToken = null;
-      Path tokenProperties = Paths.get(this.config.get("tokenProperties"));
       Path driveAcronymProperties = Paths.get(this.config.get("driveAcronymProperties"));
 
-      if (Files.notExists(tokenProperties)) {
-        Files.createFile(tokenProperties);
-      }
-
       if (Files.notExists(driveAcronymProperties)) {
         Files.createFile(driveAcronymProperties);
         log.info("Application paused for 60 seconds. Please populate the newly created drive acronym properties file.");
@@ -504,7 +1077,9 @@ public class DrivePollEventProcessor implements Processor {
 
       do {
         DriveList result = service.drives().list()
+            .setFields(DRIVE_LIST_FIELDS)
             .setPageToken(pageToken)
+            .setPageSize(MAX_DRIVES_PAGE_SIZE)
             .execute();
         if (result != null) {
           List<Drive> teamDrives = result.getDrives();
@@ -512,17 +1087,8 @@ public class DrivePollEventProcessor implements Processor {
 
           for (Drive teamDrive : teamDrives) {
             log.debug("Team Drive ID:" + teamDrive.getId() + "\t Team Drive Name:" + teamDrive.getName());
-            File publishedFolder = accessPublishedFolder(teamDrive);
-
-            if (publishedFolder == null)
-              publishedFolder = createPublishedFolder(teamDrive);
-
-            accessPublishedFiles(publishedFolder, teamDrive);
-            StartPageToken response = service.changes().getStartPageToken()
-                .setSupportsAllDrives(true)
-                .setDriveId(teamDrive.getId())
-                .execute();
-            updateDriveChangesToken(teamDrive.getId(), response.getStartPageToken());
+            folderCache.put(teamDrive.getId(), teamDrive.getName(), null);
+            loadTeamDriveOrResumeLater(teamDrive);
           }
           pageToken = result.getNextPageToken();
         }
@@ -539,22 +1105,173 @@ public class DrivePollEventProcessor implements Processor {
     }
   }
 
-  private File createPublishedFolder(Drive teamDrive) {
+  /**
+   * Loads a Team Drive, leaving a failed load to be resumed on the next poll,
+   * so that one failing drive does not prevent the others from loading
+   *
+   * @param teamDrive
+   */
+  private void loadTeamDriveOrResumeLater(Drive teamDrive) {
     try {
-      File folderMetaData = new File();
-      folderMetaData.setParents(Collections.singletonList(teamDrive.getId()));
-      folderMetaData.setName("published");
-      folderMetaData.setMimeType("application/vnd.google-apps.folder");
-      File publishedFolder = service.files().create(folderMetaData).setSupportsTeamDrives(true).setFields("id, parents")
+      loadTeamDrive(teamDrive);
+    } catch (Exception e) {
+      log.error("Load of Team Drive " + teamDrive.getName() + " failed, it will be resumed on the next poll: "
+          + e.getMessage());
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Loads all the published files of a Team Drive and stores its page token
+   * once the load is complete.
+   * <p>
+   * The start page token is captured and stored before the load begins, so
+   * that the changes made during the load are picked up by the next poll. The
+   * files already sent are recorded in a load checkpoint, so that an
+   * interrupted load resumes where it left off on the next poll. If the load
+   * fails, the exception is thrown and the drive is left unloaded with its
+   * checkpoint, to be resumed.
+   *
+   * @param teamDrive
+   * @throws IOException
+   */
+  public void loadTeamDrive(Drive teamDrive) throws IOException {
+    String loadTokenKey = LOAD_TOKEN_PREFIX + teamDrive.getId();
+    String startPageToken = loadToken(loadTokenKey);
+    if (startPageToken == null) {
+      StartPageToken response = service.changes().getStartPageToken()
+          .setSupportsAllDrives(true)
+          .setDriveId(teamDrive.getId())
           .execute();
-      log.info("Published folder created");
-      createSubfolders(publishedFolder, "minutes,workplans,policies,guidelines,links");
-      log.info("Sub-Folders created under Published");
-      return publishedFolder;
-    } catch (IOException e) {
+      startPageToken = response.getStartPageToken();
+      updateToken(loadTokenKey, startPageToken);
+      flushTokens();
+    } else {
+      log.info("Resuming the interrupted load of Team Drive " + teamDrive.getName());
+    }
+
+    DriveLoadCheckpoint checkpoint = new DriveLoadCheckpoint(getCheckpointDir(), teamDrive.getId());
+    try {
+      File publishedFolder = accessPublishedFolder(teamDrive);
+
+      if (publishedFolder == null)
+        publishedFolder = createPublishedFolder(teamDrive);
+
+      loadPublishedFiles(publishedFolder, teamDrive, checkpoint);
+    } finally {
+      checkpoint.close();
+    }
+
+    updateDriveChangesToken(teamDrive.getId(), startPageToken);
+    updateToken(loadTokenKey, null);
+    flushTokens();
+    checkpoint.complete();
+  }
+
+  /**
+   * @return the directory where the load checkpoints are stored. Defaults to
+   *         the directory of the token properties file.
+   */
+  private Path getCheckpointDir() {
+    String checkpointDir = config.get("loadCheckpointDir");
+    if (checkpointDir != null && !checkpointDir.trim().isEmpty()) {
+      return Paths.get(checkpointDir);
+    }
+    return Paths.get(config.get("tokenProperties")).toAbsolutePath().getParent();
+  }
+
+  /**
+   * Sends the requests for files found during a load. Files that have already
+   * been sent according to the load checkpoint are skipped. The other files
+   * are looked up in Solr in batches: a new file request is only sent for the
+   * files that are not indexed yet, while indexed files only get the update,
+   * rename or move requests needed to bring them up to date. This way,
+   * reloading files that are already indexed does not download them again.
+   *
+   * @param files
+   * @param paths
+   *          the source paths of the files, keyed by file ID
+   * @param checkpoint
+   * @throws IOException
+   */
+  private void sendLoadFileRequests(List<File> files, Map<String, String> paths, DriveLoadCheckpoint checkpoint)
+      throws IOException {
+    List<File> pending = new ArrayList<>();
+    for (File file : files) {
+      if (checkpoint.isDone(file.getId())) {
+        log.debug("Skipping file already loaded:" + file.getId());
+      } else {
+        pending.add(file);
+      }
+    }
+
+    for (int start = 0; start < pending.size(); start += BULK_UPDATE_SIZE) {
+      List<File> batch = pending.subList(start, Math.min(start + BULK_UPDATE_SIZE, pending.size()));
+      List<String> ids = new ArrayList<>();
+      for (File file : batch) {
+        ids.add(file.getId());
+      }
+      Map<String, SolrDocument> indexed = getIndexedFiles(ids);
+
+      for (File file : batch) {
+        String path = paths.get(file.getId());
+        if (indexed == null || !indexed.containsKey(file.getId())) {
+          sendNewFileRequest(file, path);
+        } else {
+          handleIndexedFile(file, path, indexed.get(file.getId()));
+        }
+        checkpoint.markDone(file.getId());
+      }
+      if (indexed != null) {
+        log.debug(indexed.size() + " of " + batch.size() + " loaded files already indexed");
+      }
+    }
+  }
+
+  /**
+   * Looks up indexed files by ID with a single Solr query
+   *
+   * @param ids
+   * @return the indexed documents with their storagePath, fileChecksum and
+   *         title, keyed by ID, or null if Solr cannot be queried
+   */
+  private Map<String, SolrDocument> getIndexedFiles(List<String> ids) {
+    StringBuilder terms = new StringBuilder();
+    for (String id : ids) {
+      if (terms.length() > 0) {
+        terms.append(',');
+      }
+      terms.append(id);
+    }
+
+    SolrQuery query = new SolrQuery();
+    query.setQuery("{!terms f=id}" + terms);
+    query.setFields("id,storagePath,fileChecksum,title");
+    query.setRows(ids.size());
+    try {
+      Map<String, SolrDocument> indexed = new HashMap<>();
+      for (SolrDocument doc : client.query(query, SolrRequest.METHOD.POST).getResults()) {
+        indexed.put((String) doc.getFieldValue("id"), doc);
+      }
+      return indexed;
+    } catch (Exception e) {
+      log.error("Unable to look up the indexed files: " + e.getMessage());
       e.printStackTrace();
+      return null;
     }
-    return null;
+  }
+
+  private File createPublishedFolder(Drive teamDrive) throws IOException {
+    File folderMetaData = new File();
+    folderMetaData.setParents(Collections.singletonList(teamDrive.getId()));
+    folderMetaData.setName("published");
+    folderMetaData.setMimeType("application/vnd.google-apps.folder");
+    File publishedFolder = service.files().create(folderMetaData).setSupportsTeamDrives(true).setFields("id, parents")
+        .execute();
+    log.info("Published folder created");
+    createSubfolders(publishedFolder, "minutes,workplans,policies,guidelines,links");
+    log.info("Sub-Folders created under Published");
+    return publishedFolder;
   }
 
   private void createSubfolders(File publishedFolder, String names) {
@@ -581,32 +1298,138 @@ public class DrivePollEventProcessor implements Processor {
    * @param service
    * @param teamDrive
    * @return the published folder for a team drive, if it exists
+   * @throws IOException
    */
-  public File accessPublishedFolder(Drive teamDrive) {
-    try {
+  public File accessPublishedFolder(Drive teamDrive) throws IOException {
+    FileList list = service.files().list()
+        .setDriveId(teamDrive.getId())
+        .setSupportsAllDrives(true)
+        .setCorpora("drive")
+        .setFields("files(id,name,parents)")
+        .setIncludeItemsFromAllDrives(true)
+        .setQ("mimeType='application/vnd.google-apps.folder' and name='published' and trashed=false")
+        .execute();
+
+    List<File> fileList = list.getFiles();
+
+    if (fileList.size() > 0) {
+      return fileList.get(0);
+    }
+    return null;
+  }
+
+  /**
+   * Sends a download request for all the files inside the published folder of
+   * a Team Drive, using the configured load mode
+   *
+   * @param publishedFolder
+   * @param teamDrive
+   * @param checkpoint
+   * @throws IOException
+   */
+  public void loadPublishedFiles(File publishedFolder, Drive teamDrive, DriveLoadCheckpoint checkpoint)
+      throws IOException {
+    if (LOAD_MODE_FLAT.equals(config.get("loadMode"))) {
+      loadDriveFlat(teamDrive, checkpoint);
+    } else {
+      accessPublishedFiles(publishedFolder, teamDrive, checkpoint);
+    }
+  }
+
+  /**
+   * Lists every item of a Team Drive in large pages, builds the folder tree in
+   * memory and sends a download request for the files inside the published
+   * folder. The paths are computed from the folder tree, so no request is made
+   * per folder or per file.
+   *
+   * @param teamDrive
+   * @param checkpoint
+   * @throws IOException
+   */
+  public void loadDriveFlat(Drive teamDrive, DriveLoadCheckpoint checkpoint) throws IOException {
+    Map<String, File> folders = new HashMap<>();
+    List<File> files = new ArrayList<>();
+    String pageToken = null;
+    do {
       FileList list = service.files().list()
-          .setDriveId(teamDrive.getId())
-          .setSupportsAllDrives(true)
+          .setQ("trashed=false")
+          .setFields(FILE_LIST_FIELDS)
           .setCorpora("drive")
-          .setFields("files(id,name,parents)")
           .setIncludeItemsFromAllDrives(true)
-          .setQ("mimeType='application/vnd.google-apps.folder' and name='published' and trashed=false")
+          .setSupportsAllDrives(true)
+          .setDriveId(teamDrive.getId())
+          .setPageSize(MAX_PAGE_SIZE)
+          .setPageToken(pageToken)
           .execute();
 
-      List<File> fileList = list.getFiles();
+      for (File item : list.getFiles()) {
+        if (PROP_MIME_TYPE_FOLDER.equals(item.getMimeType())) {
+          folders.put(item.getId(), item);
+          if (item.getParents() != null) {
+            folderCache.put(item.getId(), item.getName(), item.getParents().get(0));
+          }
+        } else if (!chkIfGoogleDoc(item.getMimeType())) {
+          files.add(item);
+        }
+      }
+      pageToken = list.getNextPageToken();
+    } while (pageToken != null);
+    log.info("Listed " + files.size() + " files and " + folders.size() + " folders in Team Drive "
+        + teamDrive.getName());
+
+    Map<String, String> folderPaths = new HashMap<>();
+    folderPaths.put(teamDrive.getId(), "/" + teamDrive.getName());
+    List<File> publishedFiles = new ArrayList<>();
+    Map<String, String> publishedPaths = new HashMap<>();
+    for (File file : files) {
+      if (file.getParents() == null) {
+        continue;
+      }
+      String folderPath = getFolderPath(file.getParents().get(0), folders, folderPaths);
+      if (folderPath == null) {
+        continue;
+      }
+      String path = folderPath + "/" + file.getName();
+      String[] paths = path.split("/");
+      if (paths.length > 2 && "published".equals(paths[2])) {
+        publishedFiles.add(file);
+        publishedPaths.put(file.getId(), path);
+      }
+    }
+    sendLoadFileRequests(publishedFiles, publishedPaths, checkpoint);
+  }
 
-      if (fileList.size() > 0) {
-        return fileList.get(0);
+  /**
+   * Computes the path of a folder from an in-memory folder tree. Computed paths
+   * are added to folderPaths, which must contain the path of the Team Drive
+   * root.
+   *
+   * @param folderId
+   * @param folders
+   *          the folders of the Team Drive keyed by ID
+   * @param folderPaths
+   *          the folder paths computed so far, keyed by ID
+   * @return the path of the folder, or null if it is not part of the tree
+   */
+  private String getFolderPath(String folderId, Map<String, File> folders, Map<String, String> folderPaths) {
+    Stack<File> unresolved = new Stack<>();
+    String id = folderId;
+    while (!folderPaths.containsKey(id)) {
+      File folder = folders.get(id);
+      if (folder == null || folder.getParents() == null || unresolved.contains(folder)) {
+        return null;
       }
+      unresolved.push(folder);
+      id = folder.getParents().get(0);
+    }
 
-    } catch (IOException e) {
-      log.error(e.getMessage());
-      e.printStackTrace();
-    } catch (Exception e) {
-      log.error(e.getMessage());
-      e.printStackTrace();
+    String path = folderPaths.get(id);
+    while (!unresolved.isEmpty()) {
+      File folder = unresolved.pop();
+      path = path + "/" + folder.getName();
+      folderPaths.put(folder.getId(), path);
     }
-    return null;
+    return path;
   }
 
   /**
@@ -616,46 +1439,44 @@ public class DrivePollEventProcessor implements Processor {
    * @param service
    * @param file
    * @param tdteamDrive
-   * @throws JSONException
+   * @param checkpoint
+   * @throws IOException
    */
-  public void accessPublishedFiles(File file, Drive teamDrive) {
-    try {
-      String query = "'" + file.getId() + "' in parents and trashed=false";
-      String pageToken = null;
-      do {
-        FileList list = service.files().list()
-            .setQ(query)
-            .setFields("nextPageToken,files(id,name,mimeType,parents,createdTime,modifiedTime,md5Checksum)")
-            .setCorpora("drive")
-            .setIncludeItemsFromAllDrives(true)
-            .setSupportsAllDrives(true)
-            .setDriveId(teamDrive.getId())
-            .setPageToken(pageToken)
-            .execute();
-
-        List<File> fileList = list.getFiles();
+  public void accessPublishedFiles(File file, Drive teamDrive, DriveLoadCheckpoint checkpoint)
+      throws IOException {
+    String query = "'" + file.getId() + "' in parents and trashed=false";
+    String pageToken = null;
+    int pageSize = INITIAL_PAGE_SIZE;
+    do {
+      FileList list = service.files().list()
+          .setQ(query)
+          .setFields(FILE_LIST_FIELDS)
+          .setCorpora("drive")
+          .setIncludeItemsFromAllDrives(true)
+          .setSupportsAllDrives(true)
+          .setDriveId(teamDrive.getId())
+          .setPageToken(pageToken)
+          .setPageSize(pageSize)
+          .execute();
+      pageSize = nextPageSize(pageSize, list.getNextPageToken());
 
-        for (File pubFile : fileList) {
-          log.debug("File Name:" + pubFile.getName());
-          log.debug("Mime type:" + pubFile.getMimeType());
-          String path = getSourcePath(pubFile);
-          if (PROP_MIME_TYPE_FOLDER.equals(pubFile.getMimeType())) {
-            accessPublishedFiles(pubFile, teamDrive);
-          } else {
-            if (!chkIfGoogleDoc(pubFile.getMimeType()))
-              sendNewFileRequest(pubFile, path);
-          }
+      List<File> fileList = list.getFiles();
+      Map<String, String> sourcePaths = getSourcePaths(fileList);
+      List<File> pageFiles = new ArrayList<>();
+
+      for (File pubFile : fileList) {
+        log.debug("File Name:" + pubFile.getName());
+        log.debug("Mime type:" + pubFile.getMimeType());
+        if (PROP_MIME_TYPE_FOLDER.equals(pubFile.getMimeType())) {
+          accessPublishedFiles(pubFile, teamDrive, checkpoint);
+        } else {
+          if (!chkIfGoogleDoc(pubFile.getMimeType()))
+            pageFiles.add(pubFile);
         }
-        pageToken = list.getNextPageToken();
-      } while (pageToken != null);
-
-    } catch (IOException e) {
-      log.error(e.getMessage());
-      e.printStackTrace();
-    } catch (Exception ex) {
-      log.error(ex.getMessage());
-      ex.printStackTrace();
-    }
+      }
+      sendLoadFileRequests(pageFiles, sourcePaths, checkpoint);
+      pageToken = list.getNextPageToken();
+    } while (pageToken != null);
   }
 
   /**
@@ -685,7 +1506,8 @@ public class DrivePollEventProcessor implements Processor {
     }
     headers.put("modified_time", modifiedTime.toString());
 
-    headers.put("file_checksum", file.getMd5Checksum());
+    headers.put("file_checksum", getContentChecksum(file));
+    putFileMetadataHeaders(file, headers);
     buildHeader(file, path, headers);
   }
 
@@ -707,16 +1529,35 @@ public class DrivePollEventProcessor implements Processor {
     HashMap<String, String> headers = new HashMap<>();
     headers.put("action", "update_file");
     headers.put("source_id", file.getId());
-    headers.put("file_checksum", file.getMd5Checksum());
+    headers.put("file_checksum", getContentChecksum(file));
     DateTime modifiedTime = file.getModifiedTime();
     if (modifiedTime == null) {
       modifiedTime = new DateTime(new Date());
     }
     headers.put("modified_time", modifiedTime.toString());
+    putFileMetadataHeaders(file, headers);
 
     sendActionExchange(headers, "");
   }
 
+  /**
+   * Adds the Drive metadata needed to download a file to the headers, so that
+   * the content processors do not have to fetch it again
+   *
+   * @param file
+   * @param headers
+   */
+  private void putFileMetadataHeaders(File file, HashMap<String, String> headers) {
+    if (file.getName() != null && file.getMimeType() != null
+        && (file.getSize() != null || DriveContentIngester.getExportMimeType(file.getMimeType()) != null)) {
+      headers.put("file_name", file.getName());
+      headers.put("mime_type", file.getMimeType());
+      if (file.getSize() != null) {
+        headers.put("file_size", file.getSize().toString());
+      }
+    }
+  }
+
   /**
    * Sends a new message exchange with given headers and body to ActionListener
    * route
@@ -724,7 +1565,7 @@ public class DrivePollEventProcessor implements Processor {
    * @param headers
    * @param body
    */
-  public void sendActionExchange(HashMap<String, String> headers, String body) {
+  public void sendActionExchange(HashMap<String, String> headers, Object body) {
     Exchange exchange = new DefaultExchange(this.producer.getCamelContext());
     Message message = new DefaultMessage();
     message.setBody(body);
@@ -745,23 +1586,7 @@ public class DrivePollEventProcessor implements Processor {
    * @return the poll token for the Team Drive
    */
   public String loadDriveChangesToken(String teamDriveId) {
-    String token = null;
-    try {
-      String drivePropFile = this.config.get("tokenProperties");
-      Path f = Paths.get(drivePropFile);
-      if (Files.exists(f) && !Files.isDirectory(f)) {
-        Properties defaultProps = new Properties();
-        FileInputStream in = new FileInputStream(drivePropFile);
-        defaultProps.load(in);
-        token = defaultProps.getProperty("drivetoken_" + teamDriveId);
-        in.close();
-      }
-    } catch (FileNotFoundException e) {
-      log.error("Properties file not found" + e.getMessage());
-    } catch (IOException e) {
-      log.error("Properties file cannot be opened" + e.getMessage());
-    }
-    return token;
+    return loadToken(DRIVE_TOKEN_PREFIX + teamDriveId);
   }
 
   /**
@@ -771,28 +1596,51 @@ public class DrivePollEventProcessor implements Processor {
    * @param driveToken
    */
   public void updateDriveChangesToken(String teamDriveId, String driveToken) {
+    updateToken(DRIVE_TOKEN_PREFIX + teamDriveId, driveToken);
+  }
+
+  /****
+   * Loads a token from the token store
+   *
+   * @param key
+   * @return the token stored under the key, or null
+   */
+  public String loadToken(String key) {
+    return tokenStore.get(key);
+  }
+
+  /**
+   * Updates a token in the token store. A null token removes the key. The
+   * token is written to the properties file by the next flush.
+   *
+   * @param key
+   * @param token
+   */
+  public void updateToken(String key, String token) {
     try {
-      String propFilePath = this.config.get("tokenProperties");
-      FileInputStream in = new FileInputStream(propFilePath);
-      Properties props = new Properties();
-      props.load(in);
-      in.close();
-      FileOutputStream out = new FileOutputStream(propFilePath);
-      props.setProperty("drivetoken_" + teamDriveId, driveToken);
-      props.store(out, "Drive Page token updated by the program - Do not delete");
-      out.close();
-    } catch (FileNotFoundException e) {
-      log.error("Properties file not found" + e.getMessage());
+      tokenStore.put(key, token);
     } catch (IOException e) {
-      log.error("Properties file cannot be opened" + e.getMessage());
-    } catch (Exception e) {
-      log.error(e.getMessage());
+      log.error("Properties file cannot be written" + e.getMessage());
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Writes the pending token updates to the properties file
+   */
+  public void flushTokens() {
+    try {
+      tokenStore.flush();
+    } catch (IOException e) {
+      log.error("Properties file cannot be written" + e.getMessage());
       e.printStackTrace();
     }
   }
 
   /**
    * Gets the absolute path of a file or folder as it stands in Drive storage.
+   * Ancestor folders are resolved through the folder cache, and only fetched
+   * from Drive on a cache miss.
    *
    * @param service
    * @param item
@@ -807,20 +1655,10 @@ public class DrivePollEventProcessor implements Processor {
     path.push(itemName);
 
     try {
-      while (true) {
-        File parent = service.files().get(parentID)
-            .setSupportsAllDrives(true)
-            .setFields("id,name,parents")
-            .execute();
-
-        if (parent.getParents() == null) {
-          String teamDriveName = service.drives().get(parent.getId()).execute().getName();
-          path.push(teamDriveName);
-          break;
-        } else {
-          path.push(parent.getName());
-          parentID = parent.getParents().get(0);
-        }
+      while (parentID != null) {
+        DriveFolderCache.Entry parent = getFolder(parentID);
+        path.push(parent.getName());
+        parentID = parent.getParentId();
       }
     } catch (Exception e) {
       log.error(e.getMessage());
@@ -834,6 +1672,125 @@ public class DrivePollEventProcessor implements Processor {
     return fullPathBuilder.toString();
   }
 
+  /**
+   * Gets the source paths of a set of files or folders. The ancestor folders
+   * that are not in the folder cache are fetched with batched requests, one
+   * tree level at a time, so that resolving the paths of a whole page of
+   * files costs one round trip per level.
+   *
+   * @param items
+   * @return the source paths keyed by file ID
+   */
+  public Map<String, String> getSourcePaths(List<File> items) {
+    try {
+      prefetchFolders(items);
+    } catch (Exception e) {
+      log.error(e.getMessage());
+      e.printStackTrace();
+    }
+
+    Map<String, String> sourcePaths = new HashMap<>();
+    for (File item : items) {
+      sourcePaths.put(item.getId(), getSourcePath(item));
+    }
+    return sourcePaths;
+  }
+
+  /**
+   * Loads the ancestor folders of the given items into the folder cache using
+   * batched requests
+   *
+   * @param items
+   * @throws IOException
+   */
+  private void prefetchFolders(List<File> items) throws IOException {
+    Set<String> requested = new HashSet<>();
+    while (true) {
+      Set<String> missing = new HashSet<>();
+      for (File item : items) {
+        if (item.getParents() == null || item.getParents().isEmpty()) {
+          continue;
+        }
+        String folderId = item.getParents().get(0);
+        DriveFolderCache.Entry entry;
+        while (folderId != null && (entry = folderCache.peek(folderId)) != null) {
+          folderId = entry.getParentId();
+        }
+        if (folderId != null && !requested.contains(folderId)) {
+          missing.add(folderId);
+        }
+      }
+
+      if (missing.isEmpty()) {
+        return;
+      }
+      requested.addAll(missing);
+      folderCache.recordMisses(missing.size());
+      log.debug("Fetching " + missing.size() + " folders");
+
+      Map<String, File> folders = batcher.getFiles(missing, "id,name,parents");
+      List<String> rootIds = new ArrayList<>();
+      for (File folder : folders.values()) {
+        if (folder.getParents() == null) {
+          rootIds.add(folder.getId());
+        } else {
+          folderCache.put(folder.getId(), folder.getName(), folder.getParents().get(0));
+        }
+      }
+
+      if (!rootIds.isEmpty()) {
+        Map<String, String> teamDriveNames = batcher.getDriveNames(rootIds);
+        for (Map.Entry<String, String> teamDrive : teamDriveNames.entrySet()) {
+          folderCache.put(teamDrive.getKey(), teamDrive.getValue(), null);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the name and parent of a folder from the folder cache, fetching
+   * it from Drive on a cache miss. The root folder of a shared drive is
+   * resolved to the name of the shared drive.
+   *
+   * @param folderId
+   * @return the folder cache entry
+   * @throws IOException
+   */
+  private DriveFolderCache.Entry getFolder(String folderId) throws IOException {
+    DriveFolderCache.Entry entry = folderCache.get(folderId);
+    if (entry != null) {
+      return entry;
+    }
+
+    File folder = service.files().get(folderId)
+        .setSupportsAllDrives(true)
+        .setFields("id,name,parents")
+        .execute();
+
+    if (folder.getParents() == null) {
+      String teamDriveName = service.drives().get(folder.getId()).setFields("name").execute().getName();
+      entry = new DriveFolderCache.Entry(teamDriveName, null);
+    } else {
+      entry = new DriveFolderCache.Entry(folder.getName(), folder.getParents().get(0));
+    }
+    folderCache.put(folderId, entry.getName(), entry.getParentId());
+    return entry;
+  }
+
+  /**
+   * Returns the page size for the next page of a listing. The page size is
+   * doubled, up to the API maximum, as long as more pages remain, so that a
+   * large backlog takes fewer round trips while small listings stay cheap.
+   *
+   * @param pageSize
+   *          the size of the page just fetched
+   * @param nextPageToken
+   * @return the size of the next page
+   */
+  static int nextPageSize(int pageSize, String nextPageToken) {
+    return nextPageToken == null ? pageSize : Math.min(MAX_PAGE_SIZE, pageSize * 2);
+  }
+
   /**
    *
    * @param fileId
@@ -848,22 +1805,25 @@ public class DrivePollEventProcessor implements Processor {
     try {
       teamDriveId = service.files().get(fileId)
           .setSupportsAllDrives(true)
+          .setFields("driveId")
           .execute().getDriveId();
 
       log.debug("Team DriveId:" + teamDriveId);
       String query = "'" + fileId + "' in parents and trashed=false";
       String pageToken = null;
+      int pageSize = INITIAL_PAGE_SIZE;
       do {
         FileList list = service.files().list()
             .setQ(query)
-            .setFields("nextPageToken,files(id,name,mimeType,parents)")
+            .setFields(FILE_LIST_FIELDS)
             .setCorpora("drive")
             .setIncludeItemsFromAllDrives(true)
             .setSupportsAllDrives(true)
             .setDriveId(teamDriveId)
             .setPageToken(pageToken)
-            .setPageSize(50)
+            .setPageSize(pageSize)
             .execute();
+        pageSize = nextPageSize(pageSize, list.getNextPageToken());
 
         List<File> fileList = list.getFiles();
 
@@ -901,6 +1861,18 @@ public class DrivePollEventProcessor implements Processor {
    */
   public void buildHeader(File file, String srcPath, HashMap<String, String> headers) {
     headers.put("source_id", file.getId());
+    buildPathHeaders(srcPath, headers);
+    sendActionExchange(headers, "");
+  }
+
+  /**
+   * Adds the storage path and the fields derived from it (Team Drive, group,
+   * category and sub-category) to the headers
+   *
+   * @param srcPath
+   * @param headers
+   */
+  public void buildPathHeaders(String srcPath, HashMap<String, String> headers) {
     headers.put("storage_path", srcPath);
 
     String paths[] = srcPath.split("/");
@@ -912,8 +1884,6 @@ public class DrivePollEventProcessor implements Processor {
     }
 
     processCategory(paths, headers);
-
-    sendActionExchange(headers, "");
   }
 
   /**
@@ -950,30 +1920,11 @@ public class DrivePollEventProcessor implements Processor {
    *
    * @param teamDrive
    * @param headers
-   * @return
-   * @throws IOException
    */
   public void processAcronym(String teamDrive, HashMap<String, String> headers) {
-    try {
-      Properties props = new Properties();
-      Path acronymPropertiesFile = Paths.get(this.config.get("driveAcronymProperties"));
-      if (Files.exists(acronymPropertiesFile) && Files.size(acronymPropertiesFile) > 0) {
-        FileInputStream in = new FileInputStream(acronymPropertiesFile.toFile());
-        props.load(in);
-        String acronym = (String) props.get(teamDrive.replaceAll(" ", "_"));
-        if (acronym != null) {
-          headers.put("group", acronym);
-        } else {
-          log.info("Could not set the group name. Ensure that it exists in the properties file.");
-        }
-        in.close();
-      }
-    } catch (IOException e) {
-      log.error(e.getMessage());
-      e.printStackTrace();
-    } catch (Exception e) {
-      log.error(e.getMessage());
-      e.printStackTrace();
+    String acronym = acronymMapping.getAcronym(teamDrive);
+    if (acronym != null) {
+      headers.put("group", acronym);
     }
   }
 }
@@ -0,0 +1,183 @@
+package edu.umd.lib.process;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.json.JSONObject;
+
+import edu.umd.lib.services.SpillBuffer;
+
+/**
+ * Solr update request for a single document, written directly into the HTTP
+ * request. The small fields of the document are held in a JSONObject, while
+ * the large fields (the extracted text and the encoded content) are streamed
+ * from their spill buffers and escaped as they are written, so the request
+ * body is never built in memory.
+ * <p>
+ * The entity is repeatable as long as the buffers are not released, so the
+ * request can be redelivered.
+ *
+ * @since 2.0
+ */
+public class SolrDocumentEntity extends AbstractHttpEntity {
+
+  private final JSONObject fields;
+  private final Map<String, SpillBuffer> streamedFields = new LinkedHashMap<>();
+  private final boolean atomicUpdate;
+
+  /**
+   * @param fields
+   *          the small fields of the document
+   * @param atomicUpdate
+   *          true to send the document as an atomic update, in which case the
+   *          streamed fields are set with the "set" modifier
+   */
+  public SolrDocumentEntity(JSONObject fields, boolean atomicUpdate) {
+    this.fields = fields;
+    this.atomicUpdate = atomicUpdate;
+    setContentType(ContentType.APPLICATION_JSON.toString());
+    setChunked(true);
+  }
+
+  /**
+   * Adds a field whose value is streamed from a buffer holding UTF-8 text
+   *
+   * @param name
+   * @param value
+   *          the buffer holding the value, or null for a null value
+   * @return this entity
+   */
+  public SolrDocumentEntity addStreamedField(String name, SpillBuffer value) {
+    streamedFields.put(name, value);
+    return this;
+  }
+
+  @Override
+  public void writeTo(OutputStream outstream) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(outstream, StandardCharsets.UTF_8));
+    writer.write(atomicUpdate ? "{\"add\":{\"doc\":" : "[");
+
+    String json = fields.toString();
+    boolean first = fields.length() == 0;
+    writer.write(json, 0, json.length() - 1);
+    for (Map.Entry<String, SpillBuffer> field : streamedFields.entrySet()) {
+      if (!first) {
+        writer.write(',');
+      }
+      first = false;
+      writer.write(JSONObject.quote(field.getKey()));
+      writer.write(':');
+      if (atomicUpdate) {
+        writer.write("{\"set\":");
+      }
+      if (field.getValue() == null) {
+        writer.write("null");
+      } else {
+        writer.write('"');
+        writeEscaped(field.getValue(), writer);
+        writer.write('"');
+      }
+      if (atomicUpdate) {
+        writer.write('}');
+      }
+    }
+    writer.write('}');
+
+    writer.write(atomicUpdate ? "}}" : "]");
+    writer.flush();
+  }
+
+  /**
+   * Copies the content of a buffer as the body of a JSON string
+   *
+   * @param value
+   * @param writer
+   * @throws IOException
+   */
+  private static void writeEscaped(SpillBuffer value, Writer writer) throws IOException {
+    char[] buffer = new char[8192];
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(value.getInputStream(), StandardCharsets.UTF_8))) {
+      int read;
+      while ((read = reader.read(buffer)) != -1) {
+        for (int i = 0; i < read; i++) {
+          char c = buffer[i];
+          switch (c) {
+          case '"':
+            writer.write("\\\"");
+            break;
+          case '\\':
+            writer.write("\\\\");
+            break;
+          case '\n':
+            writer.write("\\n");
+            break;
+          case '\r':
+            writer.write("\\r");
+            break;
+          case '\t':
+            writer.write("\\t");
+            break;
+          case '\b':
+            writer.write("\\b");
+            break;
+          case '\f':
+            writer.write("\\f");
+            break;
+          default:
+            if (c < ' ') {
+              writer.write(String.format("\\u%04x", (int) c));
+            } else {
+              writer.write(c);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the request body as a stream. The body is built in memory, so
+   * this is only meant for diagnostics; the HTTP client uses
+   * {@link #writeTo(OutputStream)}.
+   */
+  @Override
+  public InputStream getContent() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeTo(out);
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "SolrDocumentEntity" + fields.toString() + streamedFields.keySet();
+  }
+}
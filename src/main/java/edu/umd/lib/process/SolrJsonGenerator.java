@@ -1,10 +1,17 @@
 package edu.umd.lib.process;
 
+import java.util.List;
+import java.util.Map;
+
 import org.apache.camel.Exchange;
 import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import edu.umd.lib.services.SpillBuffer;
+
 public class SolrJsonGenerator {
 
   private static Logger log = Logger.getLogger(SolrJsonGenerator.class);
@@ -12,7 +19,20 @@ public class SolrJsonGenerator {
   public SolrJsonGenerator() {
   }
 
-  public static String newFileJson(Exchange exchange, String encodedMsg, String fileContent) throws JSONException {
+  /**
+   * Generates the request adding a new file. The extracted text and the
+   * encoded content are streamed from their buffers into the request.
+   *
+   * @param exchange
+   * @param encoded
+   *          the Base64 encoded content, or null
+   * @param text
+   *          the extracted text, or null if it could not be extracted
+   * @return the request entity
+   * @throws JSONException
+   */
+  public static SolrDocumentEntity newFileEntity(Exchange exchange, SpillBuffer encoded, SpillBuffer text)
+      throws JSONException {
     String id = exchange.getIn().getHeader("source_id", String.class);
     String title = exchange.getIn().getHeader("source_name", String.class);
     String group = exchange.getIn().getHeader("group", String.class);
@@ -36,17 +56,25 @@ public class SolrJsonGenerator {
     json.put("url", url);
     json.put("group", group);
     json.put("teamDrive", teamDrive);
-    json.put("fileContent", fileContent);
     json.put("type", fileType);
     json.put("category", category);
     json.put("sub_category", sub_category);
     json.put("fileChecksum", fileChecksum);
-    json.put("fileEncoded", encodedMsg);
     json.put("created", creationTime);
     json.put("updated", modifiedTime);
-
-    String messageBody = "[" + json.toString() + "]";
-    return messageBody;
+    Boolean extractionFailed = exchange.getIn().getHeader("extraction_failed", Boolean.class);
+    if (extractionFailed != null) {
+      json.put("extractionFailed", extractionFailed);
+    }
+
+    SolrDocumentEntity entity = new SolrDocumentEntity(json, false);
+    if (text != null) {
+      entity.addStreamedField("fileContent", text);
+    }
+    if (encoded != null) {
+      entity.addStreamedField("fileEncoded", encoded);
+    }
+    return entity;
   }
 
   public static String deleteJson(Exchange exchange) throws JSONException {
@@ -58,6 +86,22 @@ public class SolrJsonGenerator {
     return messageBody;
   }
 
+  /**
+   * Generates a delete by query removing all the files indexed under a folder
+   *
+   * @param exchange
+   * @return the delete by query message
+   * @throws JSONException
+   */
+  public static String deleteFolderJson(Exchange exchange) throws JSONException {
+    String folderPath = exchange.getIn().getHeader("storage_path", String.class);
+    JSONObject json = new JSONObject();
+    json.put("query", "storagePath:" + ClientUtils.escapeQueryChars(folderPath + "/") + "*");
+
+    String messageBody = "{'delete':" + json.toString() + "}";
+    return messageBody;
+  }
+
   public static String renameFileJson(Exchange exchange) throws JSONException {
     JSONObject json = new JSONObject();
 
@@ -77,47 +121,92 @@ public class SolrJsonGenerator {
   }
 
   public static String moveFileJson(Exchange exchange) throws JSONException {
+    JSONObject json = moveDocJson(exchange.getIn().getHeader("source_id", String.class),
+        exchange.getIn().getHeader("storage_path", String.class),
+        exchange.getIn().getHeader("category", String.class),
+        exchange.getIn().getHeader("sub_category", String.class),
+        exchange.getIn().getHeader("group", String.class),
+        exchange.getIn().getHeader("teamDrive", String.class));
+
+    String messageBody = "{'add':{'doc':" + json.toString() + "}}";
+    return messageBody;
+  }
+
+  /**
+   * Generates the atomic updates for moving several files at once. Each map
+   * holds the same keys as the headers of a move_file exchange.
+   *
+   * @param files
+   * @return the JSON array of atomic updates
+   * @throws JSONException
+   */
+  public static String moveFilesJson(List<Map<String, String>> files) throws JSONException {
+    JSONArray docs = new JSONArray();
+    for (Map<String, String> file : files) {
+      docs.put(moveDocJson(file.get("source_id"), file.get("storage_path"), file.get("category"),
+          file.get("sub_category"), file.get("group"), file.get("teamDrive")));
+    }
+    return docs.toString();
+  }
+
+  private static JSONObject moveDocJson(String id, String storagePath, String category, String subCategory,
+      String group, String teamDrive) throws JSONException {
     JSONObject json = new JSONObject();
 
-    json.put("id", exchange.getIn().getHeader("source_id", String.class));
+    json.put("id", id);
 
     JSONObject storagePathObj = new JSONObject();
-    json.put("storagePath", storagePathObj.put("set", exchange.getIn().getHeader("storage_path", String.class)));
+    json.put("storagePath", storagePathObj.put("set", storagePath));
 
     JSONObject categoryObj = new JSONObject();
-    json.put("category", categoryObj.put("set", exchange.getIn().getHeader("category", String.class)));
+    json.put("category", categoryObj.put("set", category));
 
     JSONObject subCategoryObj = new JSONObject();
-    json.put("sub_category", subCategoryObj.put("set", exchange.getIn().getHeader("sub_category", String.class)));
+    json.put("sub_category", subCategoryObj.put("set", subCategory));
 
     JSONObject groupObj = new JSONObject();
-    json.put("group", groupObj.put("set", exchange.getIn().getHeader("group", String.class)));
+    json.put("group", groupObj.put("set", group));
 
     JSONObject teamDriveObj = new JSONObject();
-    json.put("teamDrive", teamDriveObj.put("set", exchange.getIn().getHeader("teamDrive", String.class)));
+    json.put("teamDrive", teamDriveObj.put("set", teamDrive));
 
-    String messageBody = "{'add':{'doc':" + json.toString() + "}}";
-    return messageBody;
+    return json;
   }
 
-  public static String updateFileJson(Exchange exchange, String encodedMsg, String fileContent) throws JSONException {
+  /**
+   * Generates the atomic update of the content of a file. The extracted text
+   * and the encoded content are streamed from their buffers into the request.
+   *
+   * @param exchange
+   * @param encoded
+   *          the Base64 encoded content, or null to clear the
+   *          encoded content
+   * @param text
+   *          the extracted text, or null if it could not be extracted
+   * @return the request entity
+   * @throws JSONException
+   */
+  public static SolrDocumentEntity updateFileEntity(Exchange exchange, SpillBuffer encoded, SpillBuffer text)
+      throws JSONException {
     JSONObject json = new JSONObject();
 
     json.put("id", exchange.getIn().getHeader("source_id", String.class));
 
-    JSONObject fileContentObj = new JSONObject();
-    json.put("fileContent", fileContentObj.put("set", fileContent));
-
-    JSONObject encodeFileObj = new JSONObject();
-    json.put("fileEncoded", encodeFileObj.put("set", encodedMsg));
-
     JSONObject fileCheckSumObj = new JSONObject();
     json.put("fileChecksum", fileCheckSumObj.put("set", exchange.getIn().getHeader("file_checksum", String.class)));
 
     JSONObject modifiedTimeObj = new JSONObject();
     json.put("updated", modifiedTimeObj.put("set", exchange.getIn().getHeader("modified_time", String.class)));
 
-    String messageBody = "{'add':{'doc':" + json.toString() + "}}";
-    return messageBody;
+    Boolean extractionFailed = exchange.getIn().getHeader("extraction_failed", Boolean.class);
+    if (extractionFailed != null) {
+      JSONObject extractionFailedObj = new JSONObject();
+      json.put("extractionFailed", extractionFailedObj.put("set", extractionFailed));
+    }
+
+    SolrDocumentEntity entity = new SolrDocumentEntity(json, true);
+    entity.addStreamedField("fileContent", text);
+    entity.addStreamedField("fileEncoded", encoded);
+    return entity;
   }
 }
@@ -1,5 +1,8 @@
 package edu.umd.lib.routes;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,14 +10,25 @@ import org.apache.camel.Exchange;
 import org.apache.camel.LoggingLevel;
 import org.apache.camel.Predicate;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.converter.TimePatternConverter;
+import org.apache.camel.support.ServiceSupport;
 
+import edu.umd.lib.process.DriveBulkMoveProcessor;
 import edu.umd.lib.process.DriveDeleteProcessor;
 import edu.umd.lib.process.DriveFileContentUpdateProcessor;
 import edu.umd.lib.process.DriveFileMoveProcessor;
 import edu.umd.lib.process.DriveFileRenameProcessor;
 import edu.umd.lib.process.DriveNewFileProcessor;
+import edu.umd.lib.process.DriveNotificationProcessor;
 import edu.umd.lib.process.DrivePollEventProcessor;
 import edu.umd.lib.process.ExceptionProcessor;
+import edu.umd.lib.services.DriveChunkedDownloader;
+import edu.umd.lib.services.DriveContentCache;
+import edu.umd.lib.services.DriveContentIngester;
+import edu.umd.lib.services.GoogleDriveConnector;
+import edu.umd.lib.services.SpillBuffer;
+import edu.umd.lib.services.TextExtractionService;
+import edu.umd.lib.services.TextExtractionWorkerPool;
 
 /**
  * SolrRouter Contains all Route Configuration for Drive and Solr Integration
@@ -33,6 +47,46 @@ public class SolrRouter extends RouteBuilder {
   private String solrScheme;
   private String solrBaseUrl;
   private String driveAcronymProperties;
+  private String folderCacheSize;
+  private String pollParallelism;
+  private String changesMode;
+  private String loadMode;
+  private String loadCheckpointDir;
+  private String tokenFlushInterval;
+  private String folderUpdateMode;
+  private String notificationMode;
+  private String notificationAddress;
+  private String notificationEndpoint;
+  private String channelTtl;
+  private String fallbackPollInterval;
+  private String metadataRateLimit;
+  private String mediaRateLimit;
+  private String rateLimitRetries;
+  private String contentCacheDir;
+  private String contentCacheSize;
+  private String textLimit;
+  private String extractionMode;
+  private String extractionWorkers;
+  private String extractionTimeout;
+  private String extractionWorkerHeap;
+  private String extractionWorkerClasspath;
+  private String flagExtractionFailures;
+  private String ingestPolicy;
+  private String maxExtractSize;
+  private String exportRateLimit;
+  private String spoolDir;
+  private String spoolThreshold;
+  private String chunkedDownloadThreshold;
+  private String downloadChunkSize;
+  private String downloadParallelism;
+  private String httpTransport;
+  private String httpMaxConnections;
+  private String httpIdleTimeout;
+  private String connectTimeout;
+  private String metadataReadTimeout;
+  private String mediaReadTimeout;
+
+  private GoogleDriveConnector driveConnector;
 
   Map<String, String> config = new HashMap<String, String>();
 
@@ -40,10 +94,12 @@ public class SolrRouter extends RouteBuilder {
       + "Total Number of Attempts: {{camel.maximum_tries}} retries.";
 
   Predicate delete = header("action").isEqualTo("delete_file");
+  Predicate deletefolder = header("action").isEqualTo("delete_folder");
   Predicate newfile = header("action").isEqualTo("new_file");
   Predicate renamefile = header("action").isEqualTo("rename_file");
   Predicate update = header("action").isEqualTo("update_file");
   Predicate movefile = header("action").isEqualTo("move_file");
+  Predicate bulkmove = header("action").isEqualTo("bulk_move");
 
   @Override
   public void configure() throws Exception {
@@ -56,6 +112,90 @@ public class SolrRouter extends RouteBuilder {
     config.put("solrScheme", solrScheme);
     config.put("solrBaseUrl", solrBaseUrl);
     config.put("allowedFileSize", allowedFileSize);
+    config.put("folderCacheSize", folderCacheSize);
+    config.put("pollParallelism", pollParallelism);
+    config.put("changesMode", changesMode);
+    config.put("loadMode", loadMode);
+    config.put("loadCheckpointDir", loadCheckpointDir);
+    config.put("tokenFlushInterval", tokenFlushInterval);
+    config.put("folderUpdateMode", folderUpdateMode);
+    config.put("notificationMode", notificationMode);
+    config.put("notificationAddress", notificationAddress);
+    config.put("notificationEndpoint", notificationEndpoint);
+    config.put("channelTtl", channelTtl);
+    config.put("fallbackPollInterval", fallbackPollInterval);
+    config.put("channelRenewMargin", String.valueOf(2 * TimePatternConverter.toMilliSeconds(fallbackPollInterval)));
+    config.put("metadataRateLimit", metadataRateLimit);
+    config.put("mediaRateLimit", mediaRateLimit);
+    config.put("rateLimitRetries", rateLimitRetries);
+    config.put("contentCacheDir", contentCacheDir);
+    config.put("contentCacheSize", contentCacheSize);
+    config.put("textLimit", textLimit);
+    config.put("extractionMode", extractionMode);
+    config.put("extractionWorkers", extractionWorkers);
+    config.put("extractionTimeout", extractionTimeout);
+    config.put("extractionWorkerHeap", extractionWorkerHeap);
+    config.put("extractionWorkerClasspath", extractionWorkerClasspath);
+    config.put("flagExtractionFailures", flagExtractionFailures);
+    config.put("ingestPolicy", ingestPolicy);
+    config.put("maxExtractSize", maxExtractSize);
+    config.put("exportRateLimit", exportRateLimit);
+    config.put("spoolDir", spoolDir);
+    config.put("spoolThreshold", spoolThreshold);
+    config.put("chunkedDownloadThreshold", chunkedDownloadThreshold);
+    config.put("downloadChunkSize", downloadChunkSize);
+    config.put("downloadParallelism", downloadParallelism);
+    config.put("httpTransport", httpTransport);
+    config.put("httpMaxConnections", httpMaxConnections);
+    config.put("httpIdleTimeout", httpIdleTimeout);
+    config.put("connectTimeout", connectTimeout);
+    config.put("metadataReadTimeout", metadataReadTimeout);
+    config.put("mediaReadTimeout", mediaReadTimeout);
+
+    if (driveConnector == null) {
+      driveConnector = new GoogleDriveConnector(config);
+    }
+
+    Path spoolPath = null;
+    if (spoolDir != null && !spoolDir.isEmpty()) {
+      spoolPath = Files.createDirectories(Paths.get(spoolDir));
+    }
+    SpillBuffer.Factory buffers = new SpillBuffer.Factory(spoolPath, Integer.parseInt(spoolThreshold));
+
+    TextExtractionWorkerPool workerPool = null;
+    if ("forked".equals(extractionMode)) {
+      // The class path of the container does not hold the bundles under Karaf
+      if (extractionWorkerClasspath == null || extractionWorkerClasspath.trim().isEmpty()) {
+        throw new IllegalArgumentException("drive.extraction_worker_classpath is required in forked extraction mode");
+      }
+      final TextExtractionWorkerPool pool = new TextExtractionWorkerPool(Integer.parseInt(extractionWorkers),
+          TimePatternConverter.toMilliSeconds(extractionTimeout), extractionWorkerHeap, extractionWorkerClasspath,
+          Integer.parseInt(textLimit));
+      // Kill the worker JVMs, which would otherwise outlive the bundle
+      closeOnStop(new Runnable() {
+        @Override
+        public void run() {
+          pool.close();
+        }
+      });
+      workerPool = pool;
+    }
+    TextExtractionService extractor = new TextExtractionService(Integer.parseInt(textLimit), workerPool, spoolPath);
+    extractor.checkWorkers();
+    DriveContentIngester ingester = new DriveContentIngester(extractor, buffers,
+        Boolean.parseBoolean(flagExtractionFailures));
+    final DriveChunkedDownloader downloader = new DriveChunkedDownloader(config);
+    closeOnStop(new Runnable() {
+      @Override
+      public void run() {
+        downloader.close();
+      }
+    });
+    DriveContentCache contentCache = null;
+    if (contentCacheDir != null && !contentCacheDir.isEmpty()) {
+      contentCache = new DriveContentCache(Paths.get(contentCacheDir), Long.parseLong(contentCacheSize) * 1024 * 1024,
+          buffers);
+    }
 
     /**
      * A generic error handler (specific to this RouteBuilder)
@@ -71,7 +211,20 @@ public class SolrRouter extends RouteBuilder {
         .maximumRedeliveryDelay("{{camel.maximum_redelivery_delay}}")
         .to("direct:send_error_email");
 
-    from("timer://runOnce?repeatCount=0&delay=5000&period=" + pollInterval)
+    final DrivePollEventProcessor poller = new DrivePollEventProcessor(config, driveConnector);
+    boolean push = poller.getChannelManager() != null;
+    if (push) {
+      // Stop the channels at Google, so that a restart does not leave them
+      // running next to the channels it registers
+      closeOnStop(new Runnable() {
+        @Override
+        public void run() {
+          poller.getChannelManager().stopAll();
+        }
+      });
+    }
+
+    from("timer://runOnce?repeatCount=0&delay=5000&period=" + (push ? fallbackPollInterval : pollInterval))
         .to("direct:default.pollDrive");
 
     /**
@@ -81,7 +234,28 @@ public class SolrRouter extends RouteBuilder {
     from("direct:default.pollDrive")
         .routeId("DrivePollRouter")
         .log("Polling Drive for events")
-        .process(new DrivePollEventProcessor(config));
+        .process(poller);
+
+    if (push) {
+      /**
+       * DriveNotificationListener: receives the push notifications from Drive
+       * and hands the change notifications over to DriveNotificationPoller
+       * without waiting for the poll
+       */
+      from(notificationEndpoint)
+          .routeId("DriveNotificationListener")
+          .process(new DriveNotificationProcessor(poller.getChannelManager()))
+          .filter(header("driveId").isNotNull())
+          .to("seda:drive.notifications?waitForTaskToComplete=Never");
+
+      /**
+       * DriveNotificationPoller: polls the change feed of a notified drive
+       */
+      from("seda:drive.notifications")
+          .routeId("DriveNotificationPoller")
+          .log("Polling notified Drive ${header.driveId}")
+          .process(poller);
+    }
 
     /**
      * ActionListener: receives exchanges resulting from polling Drive changes &
@@ -95,12 +269,16 @@ public class SolrRouter extends RouteBuilder {
         .to("direct:newfile.filesys")
         .when(delete)
         .to("direct:delete.filesys")
+        .when(deletefolder)
+        .to("direct:delete.filesys")
         .when(renamefile)
         .to("direct:renamefile.filesys")
         .when(update)
         .to("direct:update.filesys")
         .when(movefile)
         .to("direct:movefile.filesys")
+        .when(bulkmove)
+        .to("direct:bulkmove.filesys")
         .otherwise()
         .to("direct:default");
 
@@ -111,12 +289,12 @@ public class SolrRouter extends RouteBuilder {
     from("direct:newfile.filesys")
         .routeId("NewFile")
         .log("Request received to add a new file")
-        .process(new DriveNewFileProcessor(config))
+        .process(new DriveNewFileProcessor(config, driveConnector, ingester, contentCache, downloader))
         .to("direct:update.solr");
 
     /**
-     * FileDeleter: receives exchanges with info about a file to delete from
-     * Solr
+     * FileDeleter: receives exchanges with info about a file, or a folder
+     * whose files are all to be deleted, to delete from Solr
      */
     from("direct:delete.filesys")
         .routeId("FileDeleter")
@@ -142,6 +320,16 @@ public class SolrRouter extends RouteBuilder {
         .process(new DriveFileMoveProcessor(config))
         .to("direct:update.solr");
 
+    /**
+     * BulkFileMover: receives exchanges with info about moving all the files
+     * under a renamed or moved folder in Solr
+     */
+    from("direct:bulkmove.filesys")
+        .routeId("BulkFileMover")
+        .log("Updating file paths in Solr for a folder")
+        .process(new DriveBulkMoveProcessor(config))
+        .to("direct:update.solr");
+
     /**
      * FileUpdater: receives exchanges with info updating the content of a file
      * in Solr
@@ -149,7 +337,7 @@ public class SolrRouter extends RouteBuilder {
     from("direct:update.filesys")
         .routeId("FileUpdater")
         .log("Request received to update a file")
-        .process(new DriveFileContentUpdateProcessor(config))
+        .process(new DriveFileContentUpdateProcessor(config, driveConnector, ingester, contentCache, downloader))
         .to("direct:update.solr");
 
     /**
@@ -196,6 +384,41 @@ public class SolrRouter extends RouteBuilder {
 
   }
 
+  /**
+   * Runs a task when the Camel context stops, on a bundle stop or a
+   * configuration reload, to release a resource created for the routes
+   *
+   * @param task
+   * @throws Exception
+   */
+  private void closeOnStop(final Runnable task) throws Exception {
+    getContext().addService(new ServiceSupport() {
+      @Override
+      protected void doStart() {
+      }
+
+      @Override
+      protected void doStop() {
+        task.run();
+      }
+    });
+  }
+
+  /**
+   * @return the shared Drive connector
+   */
+  public GoogleDriveConnector getDriveConnector() {
+    return driveConnector;
+  }
+
+  /**
+   * @param driveConnector
+   *          the shared Drive connector to set
+   */
+  public void setDriveConnector(GoogleDriveConnector driveConnector) {
+    this.driveConnector = driveConnector;
+  }
+
   /**
    * @return the clientSecret
    */
@@ -336,4 +559,612 @@ public class SolrRouter extends RouteBuilder {
     this.solrBaseUrl = solrBaseUrl;
   }
 
+  /**
+   *
+   * @return the maximum number of folders kept in the folder cache
+   */
+  public String getFolderCacheSize() {
+    return folderCacheSize;
+  }
+
+  /**
+   *
+   * @param folderCacheSize
+   */
+  public void setFolderCacheSize(String folderCacheSize) {
+    this.folderCacheSize = folderCacheSize;
+  }
+
+  /**
+   *
+   * @return the maximum number of shared drives polled concurrently
+   */
+  public String getPollParallelism() {
+    return pollParallelism;
+  }
+
+  /**
+   *
+   * @param pollParallelism
+   */
+  public void setPollParallelism(String pollParallelism) {
+    this.pollParallelism = pollParallelism;
+  }
+
+  /**
+   *
+   * @return the change feed mode, per_drive or all_drives
+   */
+  public String getChangesMode() {
+    return changesMode;
+  }
+
+  /**
+   *
+   * @param changesMode
+   */
+  public void setChangesMode(String changesMode) {
+    this.changesMode = changesMode;
+  }
+
+  /**
+   *
+   * @return the initial load mode, recursive or flat
+   */
+  public String getLoadMode() {
+    return loadMode;
+  }
+
+  /**
+   *
+   * @param loadMode
+   */
+  public void setLoadMode(String loadMode) {
+    this.loadMode = loadMode;
+  }
+
+  /**
+   *
+   * @return the directory where the load checkpoints are stored
+   */
+  public String getLoadCheckpointDir() {
+    return loadCheckpointDir;
+  }
+
+  /**
+   *
+   * @param loadCheckpointDir
+   */
+  public void setLoadCheckpointDir(String loadCheckpointDir) {
+    this.loadCheckpointDir = loadCheckpointDir;
+  }
+
+  /**
+   *
+   * @return the number of token updates between writes of the token file
+   */
+  public String getTokenFlushInterval() {
+    return tokenFlushInterval;
+  }
+
+  /**
+   *
+   * @param tokenFlushInterval
+   */
+  public void setTokenFlushInterval(String tokenFlushInterval) {
+    this.tokenFlushInterval = tokenFlushInterval;
+  }
+
+  /**
+   *
+   * @return the folder update mode
+   */
+  public String getFolderUpdateMode() {
+    return folderUpdateMode;
+  }
+
+  /**
+   *
+   * @param folderUpdateMode
+   */
+  public void setFolderUpdateMode(String folderUpdateMode) {
+    this.folderUpdateMode = folderUpdateMode;
+  }
+
+  /**
+   *
+   * @return the notification mode
+   */
+  public String getNotificationMode() {
+    return notificationMode;
+  }
+
+  /**
+   *
+   * @param notificationMode
+   */
+  public void setNotificationMode(String notificationMode) {
+    this.notificationMode = notificationMode;
+  }
+
+  /**
+   *
+   * @return the notification address
+   */
+  public String getNotificationAddress() {
+    return notificationAddress;
+  }
+
+  /**
+   *
+   * @param notificationAddress
+   */
+  public void setNotificationAddress(String notificationAddress) {
+    this.notificationAddress = notificationAddress;
+  }
+
+  /**
+   *
+   * @return the notification endpoint
+   */
+  public String getNotificationEndpoint() {
+    return notificationEndpoint;
+  }
+
+  /**
+   *
+   * @param notificationEndpoint
+   */
+  public void setNotificationEndpoint(String notificationEndpoint) {
+    this.notificationEndpoint = notificationEndpoint;
+  }
+
+  /**
+   *
+   * @return the channel time to live in seconds
+   */
+  public String getChannelTtl() {
+    return channelTtl;
+  }
+
+  /**
+   *
+   * @param channelTtl
+   */
+  public void setChannelTtl(String channelTtl) {
+    this.channelTtl = channelTtl;
+  }
+
+  /**
+   *
+   * @return the fallback poll interval
+   */
+  public String getFallbackPollInterval() {
+    return fallbackPollInterval;
+  }
+
+  /**
+   *
+   * @param fallbackPollInterval
+   */
+  public void setFallbackPollInterval(String fallbackPollInterval) {
+    this.fallbackPollInterval = fallbackPollInterval;
+  }
+
+  /**
+   *
+   * @return the metadata calls per second
+   */
+  public String getMetadataRateLimit() {
+    return metadataRateLimit;
+  }
+
+  /**
+   *
+   * @param metadataRateLimit
+   */
+  public void setMetadataRateLimit(String metadataRateLimit) {
+    this.metadataRateLimit = metadataRateLimit;
+  }
+
+  /**
+   *
+   * @return the media calls per second
+   */
+  public String getMediaRateLimit() {
+    return mediaRateLimit;
+  }
+
+  /**
+   *
+   * @param mediaRateLimit
+   */
+  public void setMediaRateLimit(String mediaRateLimit) {
+    this.mediaRateLimit = mediaRateLimit;
+  }
+
+  /**
+   *
+   * @return the number of rate limit retries
+   */
+  public String getRateLimitRetries() {
+    return rateLimitRetries;
+  }
+
+  /**
+   *
+   * @param rateLimitRetries
+   */
+  public void setRateLimitRetries(String rateLimitRetries) {
+    this.rateLimitRetries = rateLimitRetries;
+  }
+
+  /**
+   *
+   * @return contentCacheDir
+   */
+  public String getContentCacheDir() {
+    return contentCacheDir;
+  }
+
+  /**
+   *
+   * @param contentCacheDir
+   */
+  public void setContentCacheDir(String contentCacheDir) {
+    this.contentCacheDir = contentCacheDir;
+  }
+
+  /**
+   *
+   * @return contentCacheSize
+   */
+  public String getContentCacheSize() {
+    return contentCacheSize;
+  }
+
+  /**
+   *
+   * @param contentCacheSize
+   */
+  public void setContentCacheSize(String contentCacheSize) {
+    this.contentCacheSize = contentCacheSize;
+  }
+
+  /**
+   *
+   * @return textLimit
+   */
+  public String getTextLimit() {
+    return textLimit;
+  }
+
+  /**
+   *
+   * @param textLimit
+   */
+  public void setTextLimit(String textLimit) {
+    this.textLimit = textLimit;
+  }
+
+  /**
+   *
+   * @return extractionMode
+   */
+  public String getExtractionMode() {
+    return extractionMode;
+  }
+
+  /**
+   *
+   * @param extractionMode
+   */
+  public void setExtractionMode(String extractionMode) {
+    this.extractionMode = extractionMode;
+  }
+
+  /**
+   *
+   * @return extractionWorkers
+   */
+  public String getExtractionWorkers() {
+    return extractionWorkers;
+  }
+
+  /**
+   *
+   * @param extractionWorkers
+   */
+  public void setExtractionWorkers(String extractionWorkers) {
+    this.extractionWorkers = extractionWorkers;
+  }
+
+  /**
+   *
+   * @return extractionTimeout
+   */
+  public String getExtractionTimeout() {
+    return extractionTimeout;
+  }
+
+  /**
+   *
+   * @param extractionTimeout
+   */
+  public void setExtractionTimeout(String extractionTimeout) {
+    this.extractionTimeout = extractionTimeout;
+  }
+
+  /**
+   *
+   * @return extractionWorkerHeap
+   */
+  public String getExtractionWorkerHeap() {
+    return extractionWorkerHeap;
+  }
+
+  /**
+   *
+   * @param extractionWorkerHeap
+   */
+  public void setExtractionWorkerHeap(String extractionWorkerHeap) {
+    this.extractionWorkerHeap = extractionWorkerHeap;
+  }
+
+  /**
+   *
+   * @return extractionWorkerClasspath
+   */
+  public String getExtractionWorkerClasspath() {
+    return extractionWorkerClasspath;
+  }
+
+  /**
+   *
+   * @param extractionWorkerClasspath
+   */
+  public void setExtractionWorkerClasspath(String extractionWorkerClasspath) {
+    this.extractionWorkerClasspath = extractionWorkerClasspath;
+  }
+
+  /**
+   *
+   * @return flagExtractionFailures
+   */
+  public String getFlagExtractionFailures() {
+    return flagExtractionFailures;
+  }
+
+  /**
+   *
+   * @param flagExtractionFailures
+   */
+  public void setFlagExtractionFailures(String flagExtractionFailures) {
+    this.flagExtractionFailures = flagExtractionFailures;
+  }
+
+  /**
+   *
+   * @return ingestPolicy
+   */
+  public String getIngestPolicy() {
+    return ingestPolicy;
+  }
+
+  /**
+   *
+   * @param ingestPolicy
+   */
+  public void setIngestPolicy(String ingestPolicy) {
+    this.ingestPolicy = ingestPolicy;
+  }
+
+  /**
+   *
+   * @return maxExtractSize
+   */
+  public String getMaxExtractSize() {
+    return maxExtractSize;
+  }
+
+  /**
+   *
+   * @param maxExtractSize
+   */
+  public void setMaxExtractSize(String maxExtractSize) {
+    this.maxExtractSize = maxExtractSize;
+  }
+
+  /**
+   *
+   * @return exportRateLimit
+   */
+  public String getExportRateLimit() {
+    return exportRateLimit;
+  }
+
+  /**
+   *
+   * @param exportRateLimit
+   */
+  public void setExportRateLimit(String exportRateLimit) {
+    this.exportRateLimit = exportRateLimit;
+  }
+
+  /**
+   *
+   * @return spoolDir
+   */
+  public String getSpoolDir() {
+    return spoolDir;
+  }
+
+  /**
+   *
+   * @param spoolDir
+   */
+  public void setSpoolDir(String spoolDir) {
+    this.spoolDir = spoolDir;
+  }
+
+  /**
+   *
+   * @return spoolThreshold
+   */
+  public String getSpoolThreshold() {
+    return spoolThreshold;
+  }
+
+  /**
+   *
+   * @param spoolThreshold
+   */
+  public void setSpoolThreshold(String spoolThreshold) {
+    this.spoolThreshold = spoolThreshold;
+  }
+
+  /**
+   *
+   * @return chunkedDownloadThreshold
+   */
+  public String getChunkedDownloadThreshold() {
+    return chunkedDownloadThreshold;
+  }
+
+  /**
+   *
+   * @param chunkedDownloadThreshold
+   */
+  public void setChunkedDownloadThreshold(String chunkedDownloadThreshold) {
+    this.chunkedDownloadThreshold = chunkedDownloadThreshold;
+  }
+
+  /**
+   *
+   * @return downloadChunkSize
+   */
+  public String getDownloadChunkSize() {
+    return downloadChunkSize;
+  }
+
+  /**
+   *
+   * @param downloadChunkSize
+   */
+  public void setDownloadChunkSize(String downloadChunkSize) {
+    this.downloadChunkSize = downloadChunkSize;
+  }
+
+  /**
+   *
+   * @return downloadParallelism
+   */
+  public String getDownloadParallelism() {
+    return downloadParallelism;
+  }
+
+  /**
+   *
+   * @param downloadParallelism
+   */
+  public void setDownloadParallelism(String downloadParallelism) {
+    this.downloadParallelism = downloadParallelism;
+  }
+
+  /**
+   *
+   * @return httpTransport
+   */
+  public String getHttpTransport() {
+    return httpTransport;
+  }
+
+  /**
+   *
+   * @param httpTransport
+   */
+  public void setHttpTransport(String httpTransport) {
+    this.httpTransport = httpTransport;
+  }
+
+  /**
+   *
+   * @return httpMaxConnections
+   */
+  public String getHttpMaxConnections() {
+    return httpMaxConnections;
+  }
+
+  /**
+   *
+   * @param httpMaxConnections
+   */
+  public void setHttpMaxConnections(String httpMaxConnections) {
+    this.httpMaxConnections = httpMaxConnections;
+  }
+
+  /**
+   *
+   * @return httpIdleTimeout
+   */
+  public String getHttpIdleTimeout() {
+    return httpIdleTimeout;
+  }
+
+  /**
+   *
+   * @param httpIdleTimeout
+   */
+  public void setHttpIdleTimeout(String httpIdleTimeout) {
+    this.httpIdleTimeout = httpIdleTimeout;
+  }
+
+  /**
+   *
+   * @return connectTimeout
+   */
+  public String getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   *
+   * @param connectTimeout
+   */
+  public void setConnectTimeout(String connectTimeout) {
+    this.connectTimeout = connectTimeout;
+  }
+
+  /**
+   *
+   * @return metadataReadTimeout
+   */
+  public String getMetadataReadTimeout() {
+    return metadataReadTimeout;
+  }
+
+  /**
+   *
+   * @param metadataReadTimeout
+   */
+  public void setMetadataReadTimeout(String metadataReadTimeout) {
+    this.metadataReadTimeout = metadataReadTimeout;
+  }
+
+  /**
+   *
+   * @return mediaReadTimeout
+   */
+  public String getMediaReadTimeout() {
+    return mediaReadTimeout;
+  }
+
+  /**
+   *
+   * @param mediaReadTimeout
+   */
+  public void setMediaReadTimeout(String mediaReadTimeout) {
+    this.mediaReadTimeout = mediaReadTimeout;
+  }
+
 }
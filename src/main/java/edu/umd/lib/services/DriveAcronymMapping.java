@@ -0,0 +1,103 @@
+package edu.umd.lib.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Mapping of Team Drive names to group acronyms, loaded from the drive acronym
+ * properties file. The mapping is kept in memory and only reloaded when the
+ * modification time of the file changes. The file is checked at most once
+ * every {@value #CHECK_INTERVAL_MILLIS} milliseconds.
+ * <p>
+ * The keys of the properties file are the Team Drive names with spaces
+ * replaced by underscores.
+ *
+ * @since 2.0
+ */
+public class DriveAcronymMapping {
+
+  private static Logger log = Logger.getLogger(DriveAcronymMapping.class);
+
+  static final long CHECK_INTERVAL_MILLIS = 5000;
+
+  private final Path acronymFile;
+  private volatile Map<String, String> acronyms = Collections.emptyMap();
+  private volatile long lastCheck;
+  private FileTime loadedTime;
+  private final Set<String> reportedMisses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  public DriveAcronymMapping(Path acronymFile) {
+    this.acronymFile = acronymFile;
+  }
+
+  /**
+   * Returns the acronym of a Team Drive. A missing acronym is only logged the
+   * first time it is looked up after each reload.
+   *
+   * @param teamDrive
+   * @return the acronym, or null if the Team Drive is not mapped
+   */
+  public String getAcronym(String teamDrive) {
+    reloadIfChanged();
+    String acronym = acronyms.get(teamDrive.replace(' ', '_'));
+    if (acronym == null && reportedMisses.add(teamDrive)) {
+      log.info("Could not set the group name for " + teamDrive + ". Ensure that it exists in the properties file.");
+    }
+    return acronym;
+  }
+
+  /**
+   * Reloads the mapping if the properties file has been modified since it was
+   * last loaded
+   */
+  private void reloadIfChanged() {
+    long now = System.currentTimeMillis();
+    if (now - lastCheck < CHECK_INTERVAL_MILLIS) {
+      return;
+    }
+
+    synchronized (this) {
+      if (now - lastCheck < CHECK_INTERVAL_MILLIS) {
+        return;
+      }
+      lastCheck = now;
+      try {
+        FileTime modifiedTime = Files.exists(acronymFile) ? Files.getLastModifiedTime(acronymFile) : null;
+        if (modifiedTime == null ? loadedTime != null : !modifiedTime.equals(loadedTime)) {
+          acronyms = load();
+          loadedTime = modifiedTime;
+          reportedMisses.clear();
+          log.info("Loaded " + acronyms.size() + " drive acronyms from " + acronymFile);
+        }
+      } catch (IOException e) {
+        log.error(e.getMessage());
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private Map<String, String> load() throws IOException {
+    Map<String, String> mapping = new HashMap<>();
+    if (Files.exists(acronymFile)) {
+      Properties props = new Properties();
+      try (InputStream in = Files.newInputStream(acronymFile)) {
+        props.load(in);
+      }
+      for (String key : props.stringPropertyNames()) {
+        mapping.put(key, props.getProperty(key));
+      }
+    }
+    return Collections.unmodifiableMap(mapping);
+  }
+}
@@ -0,0 +1,148 @@
+package edu.umd.lib.services;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.Channel;
+
+/**
+ * Registers and renews the Drive push notification channels watching the
+ * change feeds of the shared drives. Drive sends a notification to the
+ * configured address whenever a watched change feed has new changes.
+ * <p>
+ * Channels are kept in memory only. A channel is renewed when it expires
+ * within the renewal margin, and the channel it replaces is stopped. The
+ * channels of a previous run are not known after a restart; their
+ * notifications are ignored until they expire.
+ *
+ * @since 2.0
+ */
+public class DriveChannelManager {
+
+  private static Logger log = Logger.getLogger(DriveChannelManager.class);
+
+  /** Key of the channel watching the change feed of all shared drives */
+  public static final String ALL_DRIVES = "alldrives";
+
+  private final Drive service;
+  private final String address;
+  private final long ttlMillis;
+  private final long renewMarginMillis;
+
+  /** Channels keyed by the drive ID they watch */
+  private final Map<String, Channel> driveChannels = new HashMap<>();
+  /** Drive IDs keyed by channel ID, for resolving notifications */
+  private final Map<String, String> channelDrives = new ConcurrentHashMap<>();
+
+  /**
+   * @param service
+   * @param address
+   *          the HTTPS address Drive posts the notifications to
+   * @param ttlMillis
+   *          the requested lifetime of a channel
+   * @param renewMarginMillis
+   *          how long before its expiration a channel is renewed
+   */
+  public DriveChannelManager(Drive service, String address, long ttlMillis, long renewMarginMillis) {
+    this.service = service;
+    this.address = address;
+    this.ttlMillis = ttlMillis;
+    this.renewMarginMillis = renewMarginMillis;
+  }
+
+  /**
+   * Makes sure that each of the given change feeds is watched by a channel
+   * that does not expire within the renewal margin, and stops the channels of
+   * the feeds that are no longer given.
+   *
+   * @param pageTokens
+   *          the current page token of each feed to watch, keyed by drive ID
+   *          or {@link #ALL_DRIVES}
+   */
+  public synchronized void renewChannels(Map<String, String> pageTokens) {
+    long renewBefore = System.currentTimeMillis() + renewMarginMillis;
+    for (Map.Entry<String, String> pageToken : pageTokens.entrySet()) {
+      String driveId = pageToken.getKey();
+      Channel current = driveChannels.get(driveId);
+      if (current != null && current.getExpiration() != null && current.getExpiration() > renewBefore) {
+        continue;
+      }
+      try {
+        Channel channel = watch(driveId, pageToken.getValue());
+        driveChannels.put(driveId, channel);
+        channelDrives.put(channel.getId(), driveId);
+        log.info("Registered notification channel " + channel.getId() + " for drive " + driveId + ", expiring at "
+            + channel.getExpiration());
+        if (current != null) {
+          stop(current);
+        }
+      } catch (IOException e) {
+        log.error("Unable to register a notification channel for drive " + driveId + ": " + e.getMessage());
+        e.printStackTrace();
+      }
+    }
+
+    Iterator<Map.Entry<String, Channel>> channels = driveChannels.entrySet().iterator();
+    while (channels.hasNext()) {
+      Map.Entry<String, Channel> channel = channels.next();
+      if (!pageTokens.containsKey(channel.getKey())) {
+        stop(channel.getValue());
+        channels.remove();
+      }
+    }
+  }
+
+  /**
+   * @param channelId
+   *          the value of the X-Goog-Channel-ID header of a notification
+   * @return the drive ID (or {@link #ALL_DRIVES}) watched by the channel, or
+   *         null if the channel was not registered by this manager
+   */
+  public String getDriveId(String channelId) {
+    return channelId == null ? null : channelDrives.get(channelId);
+  }
+
+  /**
+   * Stops all registered channels
+   */
+  public synchronized void stopAll() {
+    for (Channel channel : driveChannels.values()) {
+      stop(channel);
+    }
+    driveChannels.clear();
+  }
+
+  private Channel watch(String driveId, String pageToken) throws IOException {
+    Channel channel = new Channel()
+        .setId(UUID.randomUUID().toString())
+        .setType("web_hook")
+        .setAddress(address)
+        .setToken(driveId)
+        .setExpiration(System.currentTimeMillis() + ttlMillis);
+
+    Drive.Changes.Watch watch = service.changes().watch(pageToken, channel)
+        .setIncludeItemsFromAllDrives(true)
+        .setSupportsAllDrives(true);
+    if (!ALL_DRIVES.equals(driveId)) {
+      watch.setDriveId(driveId);
+    }
+    return watch.execute();
+  }
+
+  private void stop(Channel channel) {
+    channelDrives.remove(channel.getId());
+    try {
+      service.channels().stop(new Channel().setId(channel.getId()).setResourceId(channel.getResourceId())).execute();
+      log.debug("Stopped notification channel " + channel.getId());
+    } catch (IOException e) {
+      log.warn("Unable to stop notification channel " + channel.getId() + ": " + e.getMessage());
+    }
+  }
+}
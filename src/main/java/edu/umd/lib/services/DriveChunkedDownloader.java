@@ -0,0 +1,212 @@
+package edu.umd.lib.services;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.google.api.client.http.HttpResponse;
+import com.google.api.services.drive.Drive;
+
+/**
+ * Downloads the content of Drive files. Files from the size threshold up are
+ * downloaded in chunks with HTTP Range requests, several chunks at a time,
+ * into a temporary file preallocated to the size of the file. A chunk whose
+ * download fails is resumed from the last byte received, up to
+ * {@value #MAX_CHUNK_RETRIES} times, instead of the whole file being
+ * downloaded again. Smaller files are streamed in a single request.
+ * <p>
+ * Each chunk is a separate media call, so it takes its own permit from the
+ * rate limiter. This class is thread-safe.
+ *
+ * @since 2.0
+ */
+public class DriveChunkedDownloader {
+
+  private static Logger log = Logger.getLogger(DriveChunkedDownloader.class);
+
+  static final int MAX_CHUNK_RETRIES = 3;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final long threshold;
+  private final long chunkSize;
+  private final Path dir;
+  private final ExecutorService executor;
+
+  /**
+   * @param threshold
+   *          the size from which files are downloaded in chunks, or -1 to
+   *          never download in chunks
+   * @param chunkSize
+   *          the size of a chunk
+   * @param parallelism
+   *          the number of chunks downloaded at a time
+   * @param dir
+   *          the directory of the temporary files, or null for the default
+   *          temporary directory
+   */
+  public DriveChunkedDownloader(long threshold, long chunkSize, int parallelism, Path dir) {
+    this.threshold = threshold;
+    this.chunkSize = chunkSize;
+    this.dir = dir == null ? Paths.get(System.getProperty("java.io.tmpdir")) : dir;
+    this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "DriveChunkedDownloader-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Creates the downloader from the chunkedDownloadThreshold,
+   * downloadChunkSize, downloadParallelism and spoolDir configuration
+   *
+   * @param config
+   */
+  public DriveChunkedDownloader(Map<String, String> config) {
+    this(Long.parseLong(config.get("chunkedDownloadThreshold")), Long.parseLong(config.get("downloadChunkSize")),
+        Integer.parseInt(config.get("downloadParallelism")),
+        config.get("spoolDir") == null || config.get("spoolDir").isEmpty() ? null : Paths.get(config.get("spoolDir")));
+  }
+
+  /**
+   * Opens the content of a file
+   *
+   * @param service
+   * @param fileId
+   * @param size
+   *          the size of the file, or null if unknown
+   * @return the content of the file, to be closed by the caller
+   * @throws IOException
+   *           if the download fails
+   */
+  public InputStream open(Drive service, String fileId, Long size) throws IOException {
+    if (threshold < 0 || size == null || size < threshold) {
+      return service.files().get(fileId)
+          .setSupportsAllDrives(true)
+          .executeMediaAsInputStream();
+    }
+    return download(service, fileId, size);
+  }
+
+  private InputStream download(final Drive service, final String fileId, long size) throws IOException {
+    final Path file = Files.createTempFile(dir, "drive-download", ".part");
+    boolean done = false;
+    List<Future<Void>> chunks = new ArrayList<>();
+    try (RandomAccessFile preallocated = new RandomAccessFile(file.toFile(), "rw")) {
+      preallocated.setLength(size);
+      final FileChannel channel = preallocated.getChannel();
+      for (long offset = 0; offset < size; offset += chunkSize) {
+        final long start = offset;
+        final long end = Math.min(size, offset + chunkSize) - 1;
+        chunks.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            downloadChunk(service, fileId, channel, start, end);
+            return null;
+          }
+        }));
+      }
+      log.debug("Downloading " + fileId + " in " + chunks.size() + " chunks");
+      for (Future<Void> chunk : chunks) {
+        chunk.get();
+      }
+      done = true;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while downloading " + fileId, e);
+    } finally {
+      if (!done) {
+        for (Future<Void> chunk : chunks) {
+          chunk.cancel(true);
+        }
+        Files.deleteIfExists(file);
+      }
+    }
+
+    return new FilterInputStream(new BufferedInputStream(Files.newInputStream(file))) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          Files.deleteIfExists(file);
+        }
+      }
+    };
+  }
+
+  /**
+   * Downloads the bytes from start to end (inclusive) of a file into the
+   * channel, resuming from the last byte received on failure
+   */
+  private void downloadChunk(Drive service, String fileId, FileChannel channel, long start, long end)
+      throws IOException {
+    long position = start;
+    int retries = 0;
+    byte[] buffer = new byte[BUFFER_SIZE];
+    while (true) {
+      try {
+        Drive.Files.Get get = service.files().get(fileId).setSupportsAllDrives(true);
+        get.getRequestHeaders().setRange("bytes=" + position + "-" + end);
+        // Ranges apply to the stored bytes, which must not be compressed
+        get.getRequestHeaders().setAcceptEncoding("identity");
+        HttpResponse response = get.executeMedia();
+        try (InputStream in = response.getContent()) {
+          if (response.getStatusCode() != 206) {
+            throw new IOException("Range request for " + fileId + " answered with " + response.getStatusCode());
+          }
+          int read;
+          while (position <= end
+              && (read = in.read(buffer, 0, (int) Math.min(buffer.length, end - position + 1))) != -1) {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+            while (bytes.hasRemaining()) {
+              position += channel.write(bytes, position);
+            }
+          }
+        }
+        if (position <= end) {
+          throw new IOException("Download of " + fileId + " ended at byte " + position + " instead of " + (end + 1));
+        }
+        return;
+      } catch (IOException e) {
+        if (Thread.currentThread().isInterrupted() || ++retries > MAX_CHUNK_RETRIES) {
+          throw e;
+        }
+        log.info("Resuming download of " + fileId + " at byte " + position + " after: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Stops the download threads
+   */
+  public void close() {
+    executor.shutdownNow();
+  }
+}
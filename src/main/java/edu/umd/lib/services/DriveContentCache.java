@@ -0,0 +1,222 @@
+package edu.umd.lib.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import edu.umd.lib.services.DriveContentIngester.Content;
+
+/**
+ * On-disk cache of the content read from Drive files, keyed by the MD5
+ * checksum of the file. Files with the same content, in different shared
+ * drives or downloaded again after a retry, are then only downloaded and
+ * parsed once.
+ * <p>
+ * An entry holds the extracted text, the Base64 encoded content if it was
+ * requested, and the detected file type. The key also includes the version of
+ * the extraction and the text limit, so that entries produced differently are
+ * never mixed. Entries are evicted in least-recently-used order once the
+ * total size of the cache exceeds its maximum; the order survives restarts
+ * through the modification time of the entry files.
+ * <p>
+ * Entries are handed out as spill buffers, read into memory for small files
+ * and linked (or copied) otherwise, so an entry evicted while its content is
+ * being sent is not affected. This class is thread-safe.
+ *
+ * @since 2.0
+ */
+public class DriveContentCache {
+
+  private static Logger log = Logger.getLogger(DriveContentCache.class);
+
+  /** Version of the extraction, to be increased when its output changes */
+  static final String EXTRACTION_VERSION = "1";
+
+  private static final String TEXT_SUFFIX = ".txt";
+  private static final String ENCODED_SUFFIX = ".b64";
+  private static final String TYPE_SUFFIX = ".type";
+
+  private final Path dir;
+  private final long maxBytes;
+  private final SpillBuffer.Factory buffers;
+  /** Size of each entry keyed by entry key, in access order */
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes;
+  private long hits;
+  private long misses;
+
+  /**
+   * Opens the cache in a directory, picking up the entries of previous runs
+   *
+   * @param dir
+   * @param maxBytes
+   *          the maximum total size of the cached files
+   * @param buffers
+   *          the factory of the buffers the entries are handed out in
+   * @throws IOException
+   */
+  public DriveContentCache(Path dir, long maxBytes, SpillBuffer.Factory buffers) throws IOException {
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.buffers = buffers;
+    Files.createDirectories(dir);
+
+    final Map<String, FileTime> accessTimes = new LinkedHashMap<>();
+    try (DirectoryStream<Path> typeFiles = Files.newDirectoryStream(dir, "*" + TYPE_SUFFIX)) {
+      for (Path typeFile : typeFiles) {
+        String name = typeFile.getFileName().toString();
+        accessTimes.put(name.substring(0, name.length() - TYPE_SUFFIX.length()), Files.getLastModifiedTime(typeFile));
+      }
+    }
+    List<String> keys = new ArrayList<>(accessTimes.keySet());
+    Collections.sort(keys, new Comparator<String>() {
+      @Override
+      public int compare(String a, String b) {
+        return accessTimes.get(a).compareTo(accessTimes.get(b));
+      }
+    });
+    for (String key : keys) {
+      long size = entrySize(key);
+      entries.put(key, size);
+      totalBytes += size;
+    }
+    log.info("Opened content cache " + dir + " with " + entries.size() + " entries, " + totalBytes + " bytes");
+    evict();
+  }
+
+  /**
+   * Returns the cached content of a file
+   *
+   * @param md5Checksum
+   * @param encode
+   *          true if the encoded content is needed
+   * @param textLimit
+   *          the text limit the content is extracted with
+   * @return the content, in buffers owned by the caller, or null if it is not
+   *         cached
+   */
+  public Content get(String md5Checksum, boolean encode, int textLimit) {
+    if (md5Checksum == null) {
+      return null;
+    }
+    String key = key(md5Checksum, textLimit);
+    SpillBuffer encoded = null;
+    SpillBuffer text = null;
+    try {
+      synchronized (this) {
+        if (!entries.containsKey(key) || (encode && !Files.exists(dir.resolve(key + ENCODED_SUFFIX)))) {
+          misses++;
+          return null;
+        }
+        hits++;
+        String fileType = new String(Files.readAllBytes(dir.resolve(key + TYPE_SUFFIX)), StandardCharsets.UTF_8);
+        text = buffers.copyOf(dir.resolve(key + TEXT_SUFFIX), ".txt");
+        if (encode) {
+          encoded = buffers.copyOf(dir.resolve(key + ENCODED_SUFFIX), ".b64");
+        }
+        Files.setLastModifiedTime(dir.resolve(key + TYPE_SUFFIX), FileTime.fromMillis(System.currentTimeMillis()));
+        return new Content(encoded, text, fileType, md5Checksum);
+      }
+    } catch (IOException e) {
+      log.warn("Unable to read content cache entry " + key + ": " + e.getMessage());
+      new Content(encoded, text, null, null).delete();
+      return null;
+    }
+  }
+
+  /**
+   * Adds the content of a file to the cache. The content buffers remain owned
+   * by the caller.
+   *
+   * @param content
+   * @param textLimit
+   *          the text limit the content was extracted with
+   */
+  public void put(Content content, int textLimit) {
+    String key = key(content.getMd5Checksum(), textLimit);
+    try {
+      synchronized (this) {
+        if (entries.containsKey(key) && (content.getEncoded() == null
+            || Files.exists(dir.resolve(key + ENCODED_SUFFIX)))) {
+          return;
+        }
+        remove(key);
+        content.getText().saveTo(dir.resolve(key + TEXT_SUFFIX));
+        if (content.getEncoded() != null) {
+          content.getEncoded().saveTo(dir.resolve(key + ENCODED_SUFFIX));
+        }
+        // The type file is written last, as it marks the entry as complete
+        Files.write(dir.resolve(key + TYPE_SUFFIX), content.getFileType().getBytes(StandardCharsets.UTF_8));
+        long size = entrySize(key);
+        entries.put(key, size);
+        totalBytes += size;
+        evict();
+      }
+    } catch (IOException e) {
+      log.warn("Unable to add content cache entry " + key + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * @return a one line summary of the cache counters, for logging
+   */
+  public synchronized String getStats() {
+    return "entries=" + entries.size() + ", bytes=" + totalBytes + ", hits=" + hits + ", misses=" + misses;
+  }
+
+  private String key(String md5Checksum, int textLimit) {
+    return md5Checksum.toLowerCase() + "-v" + EXTRACTION_VERSION + "-" + (textLimit < 0 ? "all" : textLimit);
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+    while (totalBytes > maxBytes && eldest.hasNext()) {
+      Map.Entry<String, Long> entry = eldest.next();
+      eldest.remove();
+      totalBytes -= entry.getValue();
+      deleteFiles(entry.getKey());
+      log.debug("Evicted content cache entry " + entry.getKey());
+    }
+  }
+
+  private void remove(String key) {
+    Long size = entries.remove(key);
+    if (size != null) {
+      totalBytes -= size;
+    }
+    deleteFiles(key);
+  }
+
+  private void deleteFiles(String key) {
+    for (String suffix : new String[] { TYPE_SUFFIX, TEXT_SUFFIX, ENCODED_SUFFIX }) {
+      try {
+        Files.deleteIfExists(dir.resolve(key + suffix));
+      } catch (IOException e) {
+        log.warn("Unable to delete content cache file " + key + suffix + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private long entrySize(String key) throws IOException {
+    long size = 0;
+    for (String suffix : new String[] { TYPE_SUFFIX, TEXT_SUFFIX, ENCODED_SUFFIX }) {
+      Path file = dir.resolve(key + suffix);
+      if (Files.exists(file)) {
+        size += Files.size(file);
+      }
+    }
+    return size;
+  }
+}
@@ -0,0 +1,284 @@
+package edu.umd.lib.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.log4j.Logger;
+
+/**
+ * Reads the content of a Drive file in a single pass over the download
+ * stream. While the stream is read, its MD5 checksum is computed, its bytes
+ * are Base64 encoded, and its type is detected and its text extracted by the
+ * {@link TextExtractionService}. The encoded content and the extracted text
+ * are staged in spill buffers, which keep them in memory for small files and
+ * spool them to temporary files otherwise, and from which they are streamed
+ * into the Solr request. The downloaded file is never held in memory as a
+ * whole.
+ * <p>
+ * Parsers may stop reading before the end of the stream, so the rest of the
+ * stream is drained once the text has been extracted, to complete the
+ * checksum and the encoded content.
+ * <p>
+ * If the worker extracting the text times out or crashes, or if the content
+ * cannot be parsed and extraction failures are flagged, the content is flagged
+ * as such and holds neither text nor encoded content, so the file is indexed
+ * with its metadata only. Otherwise, content that cannot be parsed is indexed
+ * with the placeholder text {@link TextExtractionService#EMPTY_TEXT}.
+ * <p>
+ * Google documents, spreadsheets and presentations have no downloadable
+ * content; they are exported by Drive as plain text or CSV, which is indexed
+ * as their text without going through Tika.
+ *
+ * @since 2.0
+ */
+public class DriveContentIngester {
+
+  private static Logger log = Logger.getLogger(DriveContentIngester.class);
+
+  /**
+   * The encoded content, extracted text, detected type and checksum of a file.
+   * The encoded content and the text are held in spill buffers, which are
+   * released by {@link #delete()}.
+   */
+  public static class Content {
+    private final SpillBuffer encoded;
+    private final SpillBuffer text;
+    private final String fileType;
+    private final String md5Checksum;
+    private final boolean extractionFailed;
+
+    Content(SpillBuffer encoded, SpillBuffer text, String fileType, String md5Checksum) {
+      this(encoded, text, fileType, md5Checksum, false);
+    }
+
+    Content(SpillBuffer encoded, SpillBuffer text, String fileType, String md5Checksum, boolean extractionFailed) {
+      this.encoded = encoded;
+      this.text = text;
+      this.fileType = fileType;
+      this.md5Checksum = md5Checksum;
+      this.extractionFailed = extractionFailed;
+    }
+
+    /**
+     * @return the Base64 encoded content, or null if it was not requested or
+     *         the extraction failed
+     */
+    public SpillBuffer getEncoded() {
+      return encoded;
+    }
+
+    /**
+     * @return the extracted text, in UTF-8, or null if the extraction failed
+     */
+    public SpillBuffer getText() {
+      return text;
+    }
+
+    public String getFileType() {
+      return fileType;
+    }
+
+    public String getMd5Checksum() {
+      return md5Checksum;
+    }
+
+    /**
+     * @return true if the extraction failed, in which case the file is to be
+     *         indexed with its metadata only
+     */
+    public boolean isExtractionFailed() {
+      return extractionFailed;
+    }
+
+    /**
+     * Releases the buffers
+     */
+    public void delete() {
+      deleteQuietly(encoded);
+      deleteQuietly(text);
+    }
+  }
+
+  /** Prefix of the pseudo checksum of Google documents, which have no MD5 */
+  public static final String EXPORT_CHECKSUM_PREFIX = "modified:";
+
+  /** Formats Google documents are exported to, keyed by Google MIME type */
+  private static final Map<String, String> EXPORT_MIME_TYPES = new HashMap<>();
+
+  static {
+    EXPORT_MIME_TYPES.put("application/vnd.google-apps.document", "text/plain");
+    EXPORT_MIME_TYPES.put("application/vnd.google-apps.spreadsheet", "text/csv");
+    EXPORT_MIME_TYPES.put("application/vnd.google-apps.presentation", "text/plain");
+  }
+
+  private final TextExtractionService extractor;
+  private final SpillBuffer.Factory buffers;
+  private final boolean flagExtractionFailures;
+
+  /**
+   * @param extractor
+   *          the service detecting the type and extracting the text of files
+   * @param buffers
+   *          the factory of the buffers holding the content
+   * @param flagExtractionFailures
+   *          true to index the content that cannot be parsed with its metadata
+   *          only, instead of the placeholder text
+   */
+  public DriveContentIngester(TextExtractionService extractor, SpillBuffer.Factory buffers,
+      boolean flagExtractionFailures) {
+    this.extractor = extractor;
+    this.buffers = buffers;
+    this.flagExtractionFailures = flagExtractionFailures;
+  }
+
+  /**
+   * @return the maximum number of characters of text extracted from a file,
+   *         or -1 for no limit
+   */
+  public int getTextLimit() {
+    return extractor.getTextLimit();
+  }
+
+  /**
+   * Reads a file from its download stream. The stream is closed when done.
+   *
+   * @param media
+   *          the download stream of the file
+   * @param fileName
+   *          the file name, used as a hint for the type detection
+   * @param expectedMd5
+   *          the MD5 checksum reported by Drive, or null if there is none
+   * @param encode
+   *          true to Base64 encode the content
+   * @return the content of the file, whose buffers must be released by the
+   *         caller
+   * @throws IOException
+   *           if the download fails or its checksum does not match
+   */
+  public Content ingest(InputStream media, String fileName, String expectedMd5, boolean encode)
+      throws IOException {
+    MessageDigest md5 = newMd5();
+    SpillBuffer encoded = encode ? buffers.create(".b64") : null;
+    SpillBuffer text = buffers.create(".txt");
+    boolean done = false;
+
+    try {
+      OutputStream encoder = encode ? new Base64OutputStream(encoded, true, 0, null) : new NullOutputStream();
+      String fileType;
+      TextExtractionService.Outcome outcome;
+      try (InputStream in = new BufferedInputStream(
+          new TeeInputStream(new DigestInputStream(media, md5), encoder, true))) {
+        fileType = extractor.detect(in, fileName);
+        outcome = extractor.extract(new CloseShieldInputStream(in), fileType, text);
+        IOUtils.copy(in, new NullOutputStream());
+      }
+      text.close();
+
+      String checksum = Hex.encodeHexString(md5.digest());
+      if (expectedMd5 != null && !expectedMd5.equalsIgnoreCase(checksum)) {
+        throw new IOException("Checksum mismatch for " + fileName + ": expected " + expectedMd5 + ", got " + checksum);
+      }
+      if (outcome == TextExtractionService.Outcome.ABORTED
+          || (outcome == TextExtractionService.Outcome.FAILED && flagExtractionFailures)) {
+        deleteQuietly(encoded);
+        deleteQuietly(text);
+        done = true;
+        return new Content(null, null, fileType, checksum, true);
+      } else if (outcome == TextExtractionService.Outcome.FAILED) {
+        deleteQuietly(text);
+        text = buffers.create(".txt");
+        text.write(TextExtractionService.EMPTY_TEXT.getBytes(StandardCharsets.UTF_8));
+        text.close();
+      }
+      done = true;
+      return new Content(encoded, text, fileType, checksum);
+    } finally {
+      if (!done) {
+        deleteQuietly(encoded);
+        deleteQuietly(text);
+      }
+    }
+  }
+
+  /**
+   * Reads the text export of a Google document. Drive does the extraction, so
+   * the exported text is only copied, up to the text limit, and there is no
+   * encoded content. The stream is closed when done.
+   *
+   * @param media
+   *          the export stream of the document
+   * @param fileType
+   *          the Google MIME type of the document
+   * @param checksum
+   *          the pseudo checksum of the document
+   * @return the content of the document, whose buffer must be released by the
+   *         caller
+   * @throws IOException
+   *           if the export fails
+   */
+  public Content ingestExport(InputStream media, String fileType, String checksum) throws IOException {
+    SpillBuffer text = buffers.create(".txt");
+    boolean done = false;
+    try (Reader reader = new InputStreamReader(media, StandardCharsets.UTF_8);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(text, StandardCharsets.UTF_8))) {
+      int textLimit = getTextLimit();
+      char[] buffer = new char[8192];
+      long copied = 0;
+      int read;
+      while ((read = reader.read(buffer)) != -1 && (textLimit < 0 || copied < textLimit)) {
+        int length = textLimit < 0 ? read : (int) Math.min(read, textLimit - copied);
+        writer.write(buffer, 0, length);
+        copied += length;
+      }
+      done = true;
+    } finally {
+      if (!done) {
+        deleteQuietly(text);
+      }
+    }
+    return new Content(null, text, fileType, checksum);
+  }
+
+  /**
+   * @param mimeType
+   *          the MIME type of a Drive file
+   * @return the MIME type the file is exported to if it is a Google document
+   *         that can be indexed, null otherwise
+   */
+  public static String getExportMimeType(String mimeType) {
+    return EXPORT_MIME_TYPES.get(mimeType);
+  }
+
+  private static void deleteQuietly(SpillBuffer buffer) {
+    if (buffer != null) {
+      buffer.delete();
+    }
+  }
+
+  private static MessageDigest newMd5() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package edu.umd.lib.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded in-memory cache of Drive folder metadata used to resolve the source
+ * path of a file without walking the folder hierarchy through the Drive API.
+ * Each entry maps a folder ID to its name and the ID of its parent. The root
+ * folder of a shared drive is stored with the shared drive name and a null
+ * parent.
+ * <p>
+ * Entries are evicted in least-recently-used order once the configured size
+ * is exceeded.
+ *
+ * @since 2.0
+ */
+public class DriveFolderCache {
+
+  private static Logger log = Logger.getLogger(DriveFolderCache.class);
+
+  private final int maxEntries;
+  private final Map<String, Entry> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Name and parent of a cached folder
+   */
+  public static class Entry {
+    private final String name;
+    private final String parentId;
+
+    public Entry(String name, String parentId) {
+      this.name = name;
+      this.parentId = parentId;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the parent folder ID, or null if this is the root of a shared
+     *         drive
+     */
+    public String getParentId() {
+      return parentId;
+    }
+  }
+
+  public DriveFolderCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > DriveFolderCache.this.maxEntries) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns the cached entry for a folder and records a hit or a miss.
+   *
+   * @param folderId
+   * @return the cached entry, or null if the folder is not cached
+   */
+  public synchronized Entry get(String folderId) {
+    Entry entry = entries.get(folderId);
+    if (entry == null) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return entry;
+  }
+
+  /**
+   * Returns the cached entry for a folder without updating the hit or miss
+   * counters.
+   *
+   * @param folderId
+   * @return the cached entry, or null if the folder is not cached
+   */
+  public synchronized Entry peek(String folderId) {
+    return entries.get(folderId);
+  }
+
+  /**
+   * Records lookups that could not be served from the cache, for callers that
+   * fetch missing folders in bulk.
+   *
+   * @param count
+   */
+  public void recordMisses(int count) {
+    misses.addAndGet(count);
+  }
+
+  /**
+   * Caches a folder
+   *
+   * @param folderId
+   * @param name
+   * @param parentId
+   *          the parent folder ID, or null for the root of a shared drive
+   */
+  public synchronized void put(String folderId, String name, String parentId) {
+    if (maxEntries > 0) {
+      entries.put(folderId, new Entry(name, parentId));
+    }
+  }
+
+  /**
+   * Removes a folder from the cache. Called when a folder is renamed, moved or
+   * deleted. Descendants remain valid since they only reference the folder by
+   * ID.
+   *
+   * @param folderId
+   */
+  public synchronized void invalidate(String folderId) {
+    if (entries.remove(folderId) != null) {
+      log.debug("Invalidated cached folder:" + folderId);
+    }
+  }
+
+  /**
+   * Removes all entries from the cache
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * @return a one line summary of the cache counters, for logging
+   */
+  public String getStats() {
+    return "size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions();
+  }
+}
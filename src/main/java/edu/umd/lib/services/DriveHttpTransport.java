@@ -0,0 +1,142 @@
+package edu.umd.lib.services;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.log4j.Logger;
+
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+
+/**
+ * The HTTP transport of the Drive client, and the timeouts of its calls.
+ * <p>
+ * The pooled transport is backed by an Apache HttpClient with a pool of
+ * keep-alive connections, so that concurrent calls from the poller and the
+ * processors reuse connections instead of each paying for a TCP and TLS
+ * handshake. Connections idle for longer than the idle timeout are evicted.
+ * Responses are gzip decoded by the client. The nethttp transport is the
+ * HttpURLConnection based transport of the Google client.
+ * <p>
+ * As a request initializer, it sets the timeouts of each call, with a longer
+ * read timeout for media (download and export) calls than for metadata calls.
+ *
+ * @since 2.0
+ */
+public class DriveHttpTransport implements HttpRequestInitializer {
+
+  private static Logger log = Logger.getLogger(DriveHttpTransport.class);
+
+  public static final String TYPE_POOLED = "pooled";
+  public static final String TYPE_NETHTTP = "nethttp";
+
+  private final String type;
+  private final int maxConnections;
+  private final int idleTimeoutSeconds;
+  private final int connectTimeoutMillis;
+  private final int metadataReadTimeoutMillis;
+  private final int mediaReadTimeoutMillis;
+
+  private HttpTransport transport;
+  private CloseableHttpClient httpClient;
+
+  /**
+   * @param type
+   *          pooled or nethttp
+   * @param maxConnections
+   *          the maximum number of pooled connections (pooled only)
+   * @param idleTimeoutSeconds
+   *          the time after which idle connections are closed (pooled only)
+   * @param connectTimeoutSeconds
+   * @param metadataReadTimeoutSeconds
+   *          the read timeout of metadata calls
+   * @param mediaReadTimeoutSeconds
+   *          the read timeout of download and export calls
+   */
+  public DriveHttpTransport(String type, int maxConnections, int idleTimeoutSeconds, int connectTimeoutSeconds,
+      int metadataReadTimeoutSeconds, int mediaReadTimeoutSeconds) {
+    this.type = type;
+    this.maxConnections = maxConnections;
+    this.idleTimeoutSeconds = idleTimeoutSeconds;
+    this.connectTimeoutMillis = (int) TimeUnit.SECONDS.toMillis(connectTimeoutSeconds);
+    this.metadataReadTimeoutMillis = (int) TimeUnit.SECONDS.toMillis(metadataReadTimeoutSeconds);
+    this.mediaReadTimeoutMillis = (int) TimeUnit.SECONDS.toMillis(mediaReadTimeoutSeconds);
+  }
+
+  /**
+   * Creates the transport from the httpTransport, httpMaxConnections,
+   * httpIdleTimeout, connectTimeout, metadataReadTimeout and mediaReadTimeout
+   * configuration
+   *
+   * @param config
+   */
+  public DriveHttpTransport(Map<String, String> config) {
+    this(config.get("httpTransport"), Integer.parseInt(config.get("httpMaxConnections")),
+        Integer.parseInt(config.get("httpIdleTimeout")), Integer.parseInt(config.get("connectTimeout")),
+        Integer.parseInt(config.get("metadataReadTimeout")), Integer.parseInt(config.get("mediaReadTimeout")));
+  }
+
+  /**
+   * Returns the transport, which is built on the first call
+   *
+   * @return the transport
+   * @throws IOException
+   */
+  public synchronized HttpTransport getTransport() throws IOException {
+    if (transport == null) {
+      if (TYPE_NETHTTP.equals(type)) {
+        try {
+          transport = GoogleNetHttpTransport.newTrustedTransport();
+        } catch (GeneralSecurityException e) {
+          throw new IOException("Unable to create the Drive HTTP transport", e);
+        }
+      } else {
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(maxConnections);
+        connections.setDefaultMaxPerRoute(maxConnections);
+        httpClient = HttpClients.custom()
+            .setConnectionManager(connections)
+            .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+            .evictExpiredConnections()
+            .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+            .disableRedirectHandling()
+            .disableAutomaticRetries()
+            .useSystemProperties()
+            .build();
+        transport = new ApacheHttpTransport(httpClient);
+      }
+      log.info("Drive HTTP transport: " + type + (httpClient == null ? "" : ", " + maxConnections + " connections"));
+    }
+    return transport;
+  }
+
+  @Override
+  public void initialize(HttpRequest request) throws IOException {
+    String path = request.getUrl().getRawPath();
+    boolean media = "media".equals(request.getUrl().getFirst("alt")) || (path != null && path.endsWith("/export"));
+    request.setConnectTimeout(connectTimeoutMillis);
+    request.setReadTimeout(media ? mediaReadTimeoutMillis : metadataReadTimeoutMillis);
+  }
+
+  /**
+   * Closes the pooled connections
+   */
+  public synchronized void close() {
+    if (httpClient != null) {
+      try {
+        httpClient.close();
+      } catch (IOException e) {
+        log.warn("Unable to close the Drive HTTP client: " + e.getMessage());
+      }
+    }
+  }
+}
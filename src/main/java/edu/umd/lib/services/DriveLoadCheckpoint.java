@@ -0,0 +1,101 @@
+package edu.umd.lib.services;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Durable record of the files already sent while loading a shared drive. The
+ * IDs of the sent files are appended to a checkpoint file, so that a load that
+ * is interrupted can resume without sending these files again. The checkpoint
+ * file is deleted once the load of the drive is complete.
+ *
+ * @since 2.0
+ */
+public class DriveLoadCheckpoint {
+
+  private static Logger log = Logger.getLogger(DriveLoadCheckpoint.class);
+
+  private final Path checkpointFile;
+  private final Set<String> doneIds = new HashSet<>();
+  private BufferedWriter writer;
+
+  /**
+   * Opens the checkpoint of a shared drive, loading the IDs recorded by a
+   * previous, interrupted load.
+   *
+   * @param checkpointDir
+   * @param driveId
+   * @throws IOException
+   */
+  public DriveLoadCheckpoint(Path checkpointDir, String driveId) throws IOException {
+    this.checkpointFile = checkpointDir.resolve(driveId + ".checkpoint");
+    if (Files.exists(checkpointFile)) {
+      try (BufferedReader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (!line.isEmpty()) {
+            doneIds.add(line);
+          }
+        }
+      }
+      log.info("Resuming load from " + checkpointFile + " with " + doneIds.size() + " files already sent");
+    }
+  }
+
+  /**
+   * @param fileId
+   * @return true if the file was sent by this or a previous load
+   */
+  public synchronized boolean isDone(String fileId) {
+    return doneIds.contains(fileId);
+  }
+
+  /**
+   * Records that a file has been sent
+   *
+   * @param fileId
+   * @throws IOException
+   */
+  public synchronized void markDone(String fileId) throws IOException {
+    if (writer == null) {
+      Files.createDirectories(checkpointFile.getParent());
+      writer = Files.newBufferedWriter(checkpointFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+    }
+    writer.write(fileId);
+    writer.newLine();
+    writer.flush();
+    doneIds.add(fileId);
+  }
+
+  /**
+   * Closes the checkpoint file, keeping it for a later load to resume from
+   *
+   * @throws IOException
+   */
+  public synchronized void close() throws IOException {
+    if (writer != null) {
+      writer.close();
+      writer = null;
+    }
+  }
+
+  /**
+   * Closes and deletes the checkpoint file once the load is complete
+   *
+   * @throws IOException
+   */
+  public synchronized void complete() throws IOException {
+    close();
+    Files.deleteIfExists(checkpointFile);
+  }
+}
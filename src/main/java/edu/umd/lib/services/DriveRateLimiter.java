@@ -0,0 +1,299 @@
+package edu.umd.lib.services;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.client.json.JsonParser;
+import com.google.api.client.json.JsonToken;
+import com.google.api.client.util.StringUtils;
+
+/**
+ * Client side rate limiter for the Drive API calls. Each call takes a permit
+ * from a token bucket before it is sent, so the client stays under the Drive
+ * quota instead of running into it. Metadata calls, media (download) calls
+ * and export calls, which are the most expensive for Drive, have separate
+ * buckets. The calls of a batch request take one permit each.
+ * <p>
+ * Calls rejected by Drive with a rate limit error (429, or 403 with a rate
+ * limit reason) are retried with jittered exponential backoff, up to the
+ * configured number of retries, instead of failing the exchange.
+ * <p>
+ * The limiter is installed as the last request initializer, after the
+ * credential, and wraps the interceptor and the unsuccessful response handler
+ * set by the credential. This class is thread-safe.
+ *
+ * @since 2.0
+ */
+public class DriveRateLimiter implements HttpRequestInitializer {
+
+  private static Logger log = Logger.getLogger(DriveRateLimiter.class);
+
+  static final long INITIAL_BACKOFF_MILLIS = 1000;
+  static final long MAX_BACKOFF_MILLIS = 64000;
+
+  private final Bucket metadata;
+  private final Bucket media;
+  private final Bucket export;
+  private final int maxRetries;
+  private final Random random = new Random();
+  private final AtomicLong rateLimitErrors = new AtomicLong();
+
+  /**
+   * Token bucket holding up to one second worth of permits. Permits can be
+   * taken ahead of the refill; the caller then waits until the debt is paid
+   * off, so concurrent callers are spaced out at the configured rate.
+   */
+  static class Bucket {
+    private final String name;
+    private final double permitsPerNano;
+    private final double capacity;
+    private double permits;
+    private long lastRefill = System.nanoTime();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private long statsAcquired;
+    private long statsTime = System.nanoTime();
+
+    Bucket(String name, double permitsPerSecond) {
+      this.name = name;
+      this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+      this.capacity = Math.max(1, permitsPerSecond);
+      this.permits = capacity;
+    }
+
+    void acquire() throws IOException {
+      long waitNanos;
+      synchronized (this) {
+        long now = System.nanoTime();
+        permits = Math.min(capacity, permits + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        permits -= 1;
+        waitNanos = permits >= 0 ? 0 : (long) (-permits / permitsPerNano);
+      }
+      acquired.incrementAndGet();
+      if (waitNanos > 0) {
+        throttled.incrementAndGet();
+        try {
+          TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting for a Drive " + name + " permit", e);
+        }
+      }
+    }
+
+    /**
+     * @return the rate of calls since the previous call of this method, the
+     *         total number of calls and of calls that had to wait
+     */
+    synchronized String getStats() {
+      long now = System.nanoTime();
+      long total = acquired.get();
+      double seconds = (now - statsTime) / (double) TimeUnit.SECONDS.toNanos(1);
+      double rate = seconds > 0 ? (total - statsAcquired) / seconds : 0;
+      statsAcquired = total;
+      statsTime = now;
+      return String.format("%s: %.1f/s, calls=%d, throttled=%d", name, rate, total, throttled.get());
+    }
+  }
+
+  /**
+   * @param metadataRate
+   *          the maximum number of metadata calls per second
+   * @param mediaRate
+   *          the maximum number of media calls per second
+   * @param maxRetries
+   *          the maximum number of retries of a call rejected with a rate
+   *          limit error
+   */
+  public DriveRateLimiter(double metadataRate, double mediaRate, int maxRetries) {
+    this(metadataRate, mediaRate, mediaRate, maxRetries);
+  }
+
+  /**
+   * @param metadataRate
+   *          the maximum number of metadata calls per second
+   * @param mediaRate
+   *          the maximum number of media calls per second
+   * @param exportRate
+   *          the maximum number of export calls per second
+   * @param maxRetries
+   *          the maximum number of retries of a call rejected with a rate
+   *          limit error
+   */
+  public DriveRateLimiter(double metadataRate, double mediaRate, double exportRate, int maxRetries) {
+    this.metadata = new Bucket("metadata", metadataRate);
+    this.media = new Bucket("media", mediaRate);
+    this.export = new Bucket("export", exportRate);
+    this.maxRetries = maxRetries;
+  }
+
+  @Override
+  public void initialize(HttpRequest request) throws IOException {
+    final HttpExecuteInterceptor interceptor = request.getInterceptor();
+    final HttpUnsuccessfulResponseHandler handler = request.getUnsuccessfulResponseHandler();
+    request.setNumberOfRetries(Math.max(request.getNumberOfRetries(), maxRetries));
+
+    request.setInterceptor(new HttpExecuteInterceptor() {
+      @Override
+      public void intercept(HttpRequest request) throws IOException {
+        Bucket bucket = getBucket(request);
+        if (bucket != null) {
+          bucket.acquire();
+        }
+        if (interceptor != null) {
+          interceptor.intercept(request);
+        }
+      }
+    });
+
+    request.setUnsuccessfulResponseHandler(new HttpUnsuccessfulResponseHandler() {
+      private int retries;
+
+      @Override
+      public boolean handleResponse(HttpRequest request, HttpResponse response, boolean supportsRetry)
+          throws IOException {
+        int status = response.getStatusCode();
+        boolean rateLimited = status == 429;
+        String forbidden = null;
+        // The body of a batch part response, which comes from another request,
+        // is left for the batch callback to parse
+        if (status == 403 && response.getRequest() == request) {
+          forbidden = response.parseAsString();
+          rateLimited = isRateLimitError(forbidden);
+        }
+
+        if (rateLimited) {
+          rateLimitErrors.incrementAndGet();
+          if (supportsRetry && retries < maxRetries) {
+            backOff(request, response, retries++);
+            return true;
+          }
+          log.warn("Giving up on " + request.getUrl() + " after " + retries + " rate limit retries");
+        } else if (handler != null && handler.handleResponse(request, response, supportsRetry)) {
+          return true;
+        }
+        if (forbidden != null) {
+          // The body has been read and cannot be parsed into the error again
+          throw newResponseException(request, response, forbidden);
+        }
+        return false;
+      }
+    });
+  }
+
+  /**
+   * @param request
+   * @return the bucket of the call, or null for the envelope of a batch
+   *         request, whose calls are counted one by one
+   */
+  Bucket getBucket(HttpRequest request) {
+    String path = request.getUrl().getRawPath();
+    if (path != null && path.startsWith("/batch")) {
+      return null;
+    }
+    if (path != null && path.endsWith("/export")) {
+      return export;
+    }
+    if ("media".equals(request.getUrl().getFirst("alt"))) {
+      return media;
+    }
+    return metadata;
+  }
+
+  /**
+   * Checks if the body of a 403 response is a rate limit error rather than a
+   * permission error
+   *
+   * @param body
+   */
+  private boolean isRateLimitError(String body) {
+    return body != null && (body.contains("RateLimitExceeded") || body.contains("rateLimitExceeded"));
+  }
+
+  /**
+   * Builds the exception the client would have thrown for an error response,
+   * from its body, which has already been read. The JSON error details are
+   * parsed like GoogleJsonResponseException does.
+   *
+   * @param request
+   * @param response
+   * @param body
+   * @return the exception, with the error details if the body holds them
+   */
+  static HttpResponseException newResponseException(HttpRequest request, HttpResponse response, String body) {
+    GoogleJsonError details = null;
+    if (request.getParser() instanceof JsonObjectParser && body != null && !body.isEmpty()) {
+      try {
+        JsonParser parser = ((JsonObjectParser) request.getParser()).getJsonFactory().createJsonParser(body);
+        JsonToken token = parser.getCurrentToken() == null ? parser.nextToken() : parser.getCurrentToken();
+        if (token != null) {
+          parser.skipToKey("error");
+          if (parser.getCurrentToken() != JsonToken.END_OBJECT) {
+            details = parser.parseAndClose(GoogleJsonError.class);
+          }
+        }
+      } catch (IOException | IllegalArgumentException e) {
+        log.debug("Unable to parse error response: " + e.getMessage());
+      }
+    }
+
+    StringBuilder message = HttpResponseException.computeMessageBuffer(response);
+    if (body != null && !body.isEmpty()) {
+      message.append(StringUtils.LINE_SEPARATOR).append(body);
+    }
+    HttpResponseException.Builder builder = new HttpResponseException.Builder(response.getStatusCode(),
+        response.getStatusMessage(), response.getHeaders()).setContent(body).setMessage(message.toString());
+    return new GoogleJsonResponseException(builder, details);
+  }
+
+  /**
+   * Waits before retrying a call, honouring the Retry-After header if present
+   *
+   * @param request
+   * @param response
+   * @param retry
+   * @throws IOException
+   */
+  private void backOff(HttpRequest request, HttpResponse response, int retry) throws IOException {
+    long delay = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(retry, 16));
+    delay = delay / 2 + (long) (random.nextDouble() * delay / 2);
+    String retryAfter = response.getHeaders().getFirstHeaderStringValue("Retry-After");
+    if (retryAfter != null && retryAfter.matches("\\d+")) {
+      delay = Math.max(delay, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter)));
+    }
+    log.info("Drive rate limit reached (" + response.getStatusCode() + "), retrying " + request.getUrl().getRawPath()
+        + " in " + delay + "ms");
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while backing off", e);
+    }
+  }
+
+  public long getRateLimitErrors() {
+    return rateLimitErrors.get();
+  }
+
+  /**
+   * @return a one line summary of the current rates and counters, for logging
+   */
+  public String getStats() {
+    return metadata.getStats() + "; " + media.getStats() + "; " + export.getStats() + "; rateLimitErrors="
+        + getRateLimitErrors();
+  }
+}
@@ -0,0 +1,160 @@
+package edu.umd.lib.services;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * In-memory store of the Drive page tokens, backed by the token properties
+ * file. The file is read once and written back behind the updates: writes are
+ * coalesced into one flush every few updates, and explicit flushes are done
+ * at the end of each poll cycle and when a drive load starts or completes.
+ * <p>
+ * The file is replaced atomically by writing a temporary file, syncing it to
+ * disk and renaming it over the token file, so a crash never leaves a
+ * truncated token file behind.
+ *
+ * @since 2.0
+ */
+public class DriveTokenStore {
+
+  private static Logger log = Logger.getLogger(DriveTokenStore.class);
+
+  private final Path tokenFile;
+  private final int flushInterval;
+  private final Properties tokens = new Properties();
+  private int pendingUpdates;
+  private FileTime loadedTime;
+
+  /**
+   * @param tokenFile
+   *          the token properties file
+   * @param flushInterval
+   *          the number of updates after which the tokens are written to the
+   *          file without waiting for an explicit flush
+   * @throws IOException
+   */
+  public DriveTokenStore(Path tokenFile, int flushInterval) throws IOException {
+    this.tokenFile = tokenFile;
+    this.flushInterval = flushInterval;
+    load();
+  }
+
+  /**
+   * Reloads the tokens if the token file has been changed or removed outside
+   * of this store, for example to force a full reload. Pending updates are
+   * discarded in that case.
+   *
+   * @throws IOException
+   */
+  public synchronized void refresh() throws IOException {
+    FileTime modifiedTime = Files.exists(tokenFile) ? Files.getLastModifiedTime(tokenFile) : null;
+    boolean changed = modifiedTime == null ? loadedTime != null : !modifiedTime.equals(loadedTime);
+    if (changed) {
+      log.info("Token file " + tokenFile + " changed on disk, reloading the tokens");
+      load();
+    }
+  }
+
+  private void load() throws IOException {
+    tokens.clear();
+    pendingUpdates = 0;
+    loadedTime = null;
+    if (Files.exists(tokenFile) && !Files.isDirectory(tokenFile)) {
+      try (InputStream in = Files.newInputStream(tokenFile)) {
+        tokens.load(in);
+      }
+      loadedTime = Files.getLastModifiedTime(tokenFile);
+    }
+  }
+
+  /**
+   * @param key
+   * @return the token stored under the key, or null
+   */
+  public synchronized String get(String key) {
+    return tokens.getProperty(key);
+  }
+
+  /**
+   * Updates a token. A null token removes the key.
+   *
+   * @param key
+   * @param token
+   * @throws IOException
+   */
+  public synchronized void put(String key, String token) throws IOException {
+    if (token == null) {
+      tokens.remove(key);
+    } else {
+      tokens.setProperty(key, token);
+    }
+    pendingUpdates++;
+    if (pendingUpdates >= flushInterval) {
+      flush();
+    }
+  }
+
+  /**
+   * @return the keys of all stored tokens
+   */
+  public synchronized Set<String> keys() {
+    return tokens.stringPropertyNames();
+  }
+
+  public synchronized boolean isEmpty() {
+    return tokens.isEmpty();
+  }
+
+  /**
+   * Writes the tokens to the token file if there are pending updates
+   *
+   * @throws IOException
+   */
+  public synchronized void flush() throws IOException {
+    if (pendingUpdates == 0) {
+      return;
+    }
+
+    Path dir = tokenFile.toAbsolutePath().getParent();
+    Path tempFile = Files.createTempFile(dir, tokenFile.getFileName().toString(), ".tmp");
+    try {
+      try (FileOutputStream out = new FileOutputStream(tempFile.toFile())) {
+        tokens.store(out, "Drive Page token updated by the program - Do not delete");
+        out.getFD().sync();
+      }
+      Files.move(tempFile, tokenFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+    syncDirectory(dir);
+
+    pendingUpdates = 0;
+    loadedTime = Files.getLastModifiedTime(tokenFile);
+    log.debug("Flushed " + tokens.size() + " tokens to " + tokenFile);
+  }
+
+  /**
+   * Syncs the directory entry of the renamed token file. Not supported on all
+   * platforms, so failures are ignored.
+   *
+   * @param dir
+   */
+  private void syncDirectory(Path dir) {
+    try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      log.debug("Unable to sync directory " + dir + ": " + e.getMessage());
+    }
+  }
+}
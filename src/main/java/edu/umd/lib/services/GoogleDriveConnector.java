@@ -9,34 +9,34 @@ import java.util.Map;
 import org.apache.log4j.Logger;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestInitializer;
-import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.DriveScopes;
 
+/**
+ * Provides the Drive client shared by the poller and all processors. The
+ * client secret is read once, and the resulting credential is reused for all
+ * requests; it refreshes its access token shortly before it expires.
+ * <p>
+ * This class is thread-safe.
+ */
 public class GoogleDriveConnector {
 
   private final String appName;
   private final String clientSecretFileName;
+  private final DriveRateLimiter rateLimiter;
+  private final DriveHttpTransport httpTransport;
 
   private static Logger log = Logger.getLogger(GoogleDriveConnector.class);
 
   private static final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
-  private static HttpTransport HTTP_TRANSPORT;
   private static final List<String> SCOPES = Arrays.asList(DriveScopes.DRIVE, DriveScopes.DRIVE_METADATA);
 
-  static {
-    try {
-      HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
-    } catch (Throwable t) {
-      t.printStackTrace();
-      System.exit(1);
-    }
-  }
+  private GoogleCredential credential;
+  private Drive driveService;
 
   /**
    * Constructs a google drive connector from the
@@ -45,8 +45,51 @@ public class GoogleDriveConnector {
    */
 
   public GoogleDriveConnector(Map<String, String> config) {
-    this.appName = config.get("appName");
-    this.clientSecretFileName = config.get("clientSecretFile");
+    this(config.get("appName"), config.get("clientSecretFile"),
+        new DriveRateLimiter(Double.parseDouble(config.get("metadataRateLimit")),
+            Double.parseDouble(config.get("mediaRateLimit")), Double.parseDouble(config.get("exportRateLimit")),
+            Integer.parseInt(config.get("rateLimitRetries"))),
+        new DriveHttpTransport(config));
+  }
+
+  /**
+   * Constructs a google drive connector
+   *
+   * @param appName
+   * @param clientSecretFileName
+   * @param rateLimiter
+   *          the rate limiter applied to all Drive calls, or null
+   * @param httpTransport
+   *          the HTTP transport and timeouts of the Drive calls
+   */
+  public GoogleDriveConnector(String appName, String clientSecretFileName, DriveRateLimiter rateLimiter,
+      DriveHttpTransport httpTransport) {
+    this.appName = appName;
+    this.clientSecretFileName = clientSecretFileName;
+    this.rateLimiter = rateLimiter;
+    this.httpTransport = httpTransport;
+  }
+
+  /**
+   * @return the rate limiter applied to all Drive calls, or null
+   */
+  public DriveRateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  /**
+   * Returns the shared, authorized Drive client service. The client is built on
+   * the first call.
+   *
+   * @return an authorized Drive client service
+   * @throws IOException
+   */
+  public synchronized Drive getDriveService() throws IOException {
+    if (driveService == null) {
+      driveService = buildDriveService();
+      log.info("Drive client initialized for " + this.appName);
+    }
+    return driveService;
   }
 
   /**
@@ -55,29 +98,36 @@ public class GoogleDriveConnector {
    * @return an authorized Drive client service
    * @throws IOException
    */
-  public Drive getDriveService() throws IOException {
+  private Drive buildDriveService() throws IOException {
     final GoogleCredential credential = authorize();
     return new Drive.Builder(
-        HTTP_TRANSPORT, JSON_FACTORY, credential).setHttpRequestInitializer(new HttpRequestInitializer() {
+        httpTransport.getTransport(), JSON_FACTORY, credential).setHttpRequestInitializer(new HttpRequestInitializer() {
           @Override
           public void initialize(HttpRequest request) throws IOException {
             credential.initialize(request);
-            request.setConnectTimeout(3 * 60000); // 3 minutes connect timeout
-            request.setReadTimeout(3 * 60000); // 3 minutes read timeout
+            httpTransport.initialize(request);
+            if (rateLimiter != null) {
+              rateLimiter.initialize(request);
+            }
           }
         }).setApplicationName(this.appName).build();
   }
 
   /**
    * Returns credential object for an authorized connection to a google drive
-   * account
+   * account. The client secret file is only read on the first call. The
+   * credential fetches a new access token when the current one is about to
+   * expire.
    *
    * @return
    * @throws IOException
    */
-  public GoogleCredential authorize() throws IOException {
-    GoogleCredential credential = GoogleCredential.fromStream(new FileInputStream(this.clientSecretFileName))
-        .createScoped(SCOPES);
+  public synchronized GoogleCredential authorize() throws IOException {
+    if (credential == null) {
+      try (FileInputStream in = new FileInputStream(this.clientSecretFileName)) {
+        credential = GoogleCredential.fromStream(in, httpTransport.getTransport(), JSON_FACTORY).createScoped(SCOPES);
+      }
+    }
     return credential;
   }
 }
@@ -0,0 +1,119 @@
+package edu.umd.lib.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Decides from the Drive metadata of a file, before it is downloaded, how
+ * much of its content is indexed. The policy is a comma separated list of
+ * MIME type patterns and actions, e.g.
+ * {@code video/*:metadata,image/*:metadata,application/zip:extract}; the
+ * first pattern matching the type of a file gives its action, and files of
+ * other types are fully ingested. Then:
+ * <ul>
+ * <li>files larger than the maximum extract size are indexed with their
+ * metadata only, whatever their type;</li>
+ * <li>files not smaller than the allowed file size are not encoded.</li>
+ * </ul>
+ *
+ * @since 2.0
+ */
+public class IngestPolicy {
+
+  private static Logger log = Logger.getLogger(IngestPolicy.class);
+
+  /** What is indexed of a file */
+  public enum Action {
+    /** The metadata only: the file is not downloaded */
+    METADATA,
+    /** The metadata and the extracted text */
+    EXTRACT,
+    /** The metadata, the extracted text and the encoded content */
+    FULL
+  }
+
+  private final List<String> patterns = new ArrayList<>();
+  private final List<Action> actions = new ArrayList<>();
+  private final long allowedFileSize;
+  private final long maxExtractSize;
+
+  /**
+   * @param policy
+   *          the list of MIME type patterns and actions
+   * @param allowedFileSize
+   *          the size from which files are not encoded
+   * @param maxExtractSize
+   *          the size above which files are not downloaded, or -1 for no limit
+   */
+  public IngestPolicy(String policy, long allowedFileSize, long maxExtractSize) {
+    this.allowedFileSize = allowedFileSize;
+    this.maxExtractSize = maxExtractSize;
+    if (policy != null) {
+      for (String rule : policy.split(",")) {
+        rule = rule.trim();
+        int separator = rule.lastIndexOf(':');
+        if (rule.isEmpty()) {
+          continue;
+        } else if (separator <= 0) {
+          log.warn("Ignoring ingest policy rule without action: " + rule);
+          continue;
+        }
+        try {
+          actions.add(Action.valueOf(rule.substring(separator + 1).trim().toUpperCase()));
+          patterns.add(rule.substring(0, separator).trim().toLowerCase());
+        } catch (IllegalArgumentException e) {
+          log.warn("Ignoring ingest policy rule with unknown action: " + rule);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates the policy from the ingestPolicy, allowedFileSize and
+   * maxExtractSize configuration
+   *
+   * @param config
+   */
+  public IngestPolicy(Map<String, String> config) {
+    this(config.get("ingestPolicy"), Long.parseLong(config.get("allowedFileSize")),
+        config.get("maxExtractSize") == null ? -1 : Long.parseLong(config.get("maxExtractSize")));
+  }
+
+  /**
+   * @param mimeType
+   *          the MIME type of the file reported by Drive
+   * @param size
+   *          the size of the file, or null if unknown
+   * @return what to index of the file
+   */
+  public Action getAction(String mimeType, Long size) {
+    Action action = Action.FULL;
+    String type = mimeType == null ? "" : mimeType.toLowerCase();
+    for (int i = 0; i < patterns.size(); i++) {
+      if (matches(patterns.get(i), type)) {
+        action = actions.get(i);
+        break;
+      }
+    }
+    if (size != null) {
+      if (maxExtractSize >= 0 && size > maxExtractSize) {
+        action = Action.METADATA;
+      } else if (action == Action.FULL && size >= allowedFileSize) {
+        action = Action.EXTRACT;
+      }
+    }
+    return action;
+  }
+
+  private static boolean matches(String pattern, String type) {
+    if (pattern.equals("*") || pattern.equals("*/*")) {
+      return true;
+    } else if (pattern.endsWith("/*")) {
+      return type.startsWith(pattern.substring(0, pattern.length() - 1));
+    }
+    return pattern.equals(type);
+  }
+}
@@ -0,0 +1,232 @@
+package edu.umd.lib.services;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Buffer staging file content, such as the extracted text and the encoded
+ * content of a file. The content is held in memory while it is smaller than
+ * the threshold, and is spilled to a uniquely named temporary file in the
+ * spool directory beyond it, so that small files, which are most of them,
+ * never touch the disk.
+ * <p>
+ * The buffer is written once, then closed, then read any number of times. It
+ * must be deleted by its owner once it is no longer needed. Buffers are
+ * created by a {@link Factory}, which holds the threshold and the spool
+ * directory.
+ *
+ * @since 2.0
+ */
+public class SpillBuffer extends OutputStream {
+
+  private static Logger log = Logger.getLogger(SpillBuffer.class);
+
+  /** Default size up to which the content is held in memory */
+  public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+  /** Creates the spill buffers of the given threshold and spool directory */
+  public static class Factory {
+    private final Path dir;
+    private final int threshold;
+
+    /**
+     * @param dir
+     *          the existing spool directory, or null for the default temporary
+     *          directory
+     * @param threshold
+     *          the size up to which the content is held in memory
+     */
+    public Factory(Path dir, int threshold) {
+      this.dir = dir == null ? Paths.get(System.getProperty("java.io.tmpdir")) : dir;
+      this.threshold = threshold;
+    }
+
+    /**
+     * @param suffix
+     *          the suffix of the temporary file, if one is needed
+     * @return an empty buffer
+     */
+    public SpillBuffer create(String suffix) {
+      return new SpillBuffer(this, suffix);
+    }
+
+    /**
+     * Creates a closed buffer with the content of a file. Small files are read
+     * into memory, others are linked (or copied if they cannot be linked) into
+     * the spool directory, so that the buffer is not affected if the file is
+     * removed.
+     *
+     * @param source
+     * @param suffix
+     * @return the buffer, owned by the caller
+     * @throws IOException
+     */
+    public SpillBuffer copyOf(Path source, String suffix) throws IOException {
+      SpillBuffer buffer = create(suffix);
+      if (Files.size(source) <= threshold) {
+        Files.copy(source, buffer);
+      } else {
+        buffer.file = Files.createTempFile(dir, "drive-content", suffix);
+        Files.delete(buffer.file);
+        link(source, buffer.file);
+        buffer.memory = null;
+      }
+      buffer.close();
+      return buffer;
+    }
+  }
+
+  /** Byte array stream whose content can be read without being copied */
+  private static class Memory extends ByteArrayOutputStream {
+    InputStream toInputStream() {
+      return new ByteArrayInputStream(buf, 0, count);
+    }
+  }
+
+  /**
+   * @return a factory of buffers with the default threshold, spilling to the
+   *         default temporary directory
+   */
+  public static Factory defaultFactory() {
+    return new Factory(null, DEFAULT_THRESHOLD);
+  }
+
+  private final Factory factory;
+  private final String suffix;
+  private Memory memory = new Memory();
+  private Path file;
+  private OutputStream fileOut;
+  private boolean closed;
+
+  private SpillBuffer(Factory factory, String suffix) {
+    this.factory = factory;
+    this.suffix = suffix;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Spill buffer is closed");
+    }
+    if (memory != null && memory.size() + len > factory.threshold) {
+      spill();
+    }
+    if (memory != null) {
+      memory.write(b, off, len);
+    } else {
+      fileOut.write(b, off, len);
+    }
+  }
+
+  private void spill() throws IOException {
+    file = Files.createTempFile(factory.dir, "drive-content", suffix);
+    fileOut = new BufferedOutputStream(Files.newOutputStream(file));
+    memory.writeTo(fileOut);
+    memory = null;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (fileOut != null) {
+      fileOut.flush();
+    }
+  }
+
+  /**
+   * Ends the writing of the content
+   */
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      if (fileOut != null) {
+        fileOut.close();
+      }
+    }
+  }
+
+  /**
+   * @return true if the content is held in memory
+   */
+  public boolean isInMemory() {
+    return memory != null;
+  }
+
+  /**
+   * @return the size of the content in bytes
+   * @throws IOException
+   */
+  public long size() throws IOException {
+    return memory != null ? memory.size() : Files.size(file);
+  }
+
+  /**
+   * @return a new stream reading the content from the start
+   * @throws IOException
+   */
+  public InputStream getInputStream() throws IOException {
+    return memory != null ? memory.toInputStream() : Files.newInputStream(file);
+  }
+
+  /**
+   * Saves the content to a file, linking the temporary file if there is one
+   *
+   * @param target
+   * @throws IOException
+   */
+  public void saveTo(Path target) throws IOException {
+    if (memory != null) {
+      try (OutputStream out = Files.newOutputStream(target)) {
+        memory.writeTo(out);
+      }
+    } else {
+      link(file, target);
+    }
+  }
+
+  /**
+   * Releases the content, deleting the temporary file if there is one
+   */
+  public void delete() {
+    try {
+      close();
+    } catch (IOException e) {
+      log.warn("Unable to close spill buffer: " + e.getMessage());
+    }
+    memory = null;
+    if (file != null) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        log.warn("Unable to delete temporary file " + file + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Hard links a file, or copies it if the file system does not support
+   * links between the two locations
+   */
+  private static void link(Path source, Path target) throws IOException {
+    try {
+      Files.createLink(target, source);
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
@@ -0,0 +1,351 @@
+package edu.umd.lib.services;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.log4j.Logger;
+import org.apache.tika.Tika;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.pdf.PDFParser;
+import org.apache.tika.parser.txt.TXTParser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Detects the type of file content and extracts its text with Tika. The
+ * detector and the parsers are created once and shared by all the callers, as
+ * Tika parsers are stateless. The same text limit applies to new and updated
+ * files.
+ * <p>
+ * When a {@link TextExtractionWorkerPool} is given, the parsing is done in
+ * forked worker JVMs instead, with a timeout and a memory cap; the content is
+ * then spooled to a temporary file in the spool directory for the worker to
+ * read.
+ * <p>
+ * The time spent extracting text is recorded per file type and logged every
+ * {@value #STATS_INTERVAL} extractions, to show which formats cost the most.
+ * This class is thread-safe.
+ *
+ * @since 2.0
+ */
+public class TextExtractionService {
+
+  private static Logger log = Logger.getLogger(TextExtractionService.class);
+
+  /** Extracted text indexed when the content cannot be parsed */
+  public static final String EMPTY_TEXT = "Empty String";
+
+  static final int STATS_INTERVAL = 100;
+
+  /** Outcome of a text extraction */
+  public enum Outcome {
+    /** The text was extracted, up to the text limit */
+    EXTRACTED,
+    /** The content could not be parsed */
+    FAILED,
+    /** The worker parsing the content timed out or crashed */
+    ABORTED
+  }
+
+  /*
+   * In karaf these files are not auto loaded and should be included in
+   * imports even though not used explicitly: AutoDetectParser, CompositeParser,
+   * ParseContext, and the pdf, txt, microsoft, html, rtf, xml, ooxml, jpeg and
+   * image parser packages.
+   */
+  private final Tika tika = new Tika();
+  private final Parser txtParser = new TXTParser();
+  private final Parser pdfParser = new PDFParser();
+  private final Parser autoDetectParser = new AutoDetectParser();
+  private final int textLimit;
+  private final TextExtractionWorkerPool workers;
+  private final Path spoolDir;
+
+  private final Map<String, TypeStats> stats = new ConcurrentHashMap<>();
+  private final AtomicLong extractions = new AtomicLong();
+
+  /** Extraction counters of a file type */
+  private static class TypeStats {
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long elapsed, boolean failed) {
+      count.incrementAndGet();
+      if (failed) {
+        failures.incrementAndGet();
+      }
+      nanos.addAndGet(elapsed);
+      long max;
+      while (elapsed > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, elapsed)) {
+        // retry
+      }
+    }
+  }
+
+  /**
+   * @param textLimit
+   *          the maximum number of characters of text to extract from a file,
+   *          or -1 for no limit
+   */
+  public TextExtractionService(int textLimit) {
+    this(textLimit, null, null);
+  }
+
+  /**
+   * @param textLimit
+   *          the maximum number of characters of text to extract from a file,
+   *          or -1 for no limit
+   * @param workers
+   *          the pool of worker JVMs parsing the files, or null to parse them
+   *          in-process
+   * @param spoolDir
+   *          the directory of the files exchanged with the workers, or null
+   *          for the default temporary directory
+   */
+  public TextExtractionService(int textLimit, TextExtractionWorkerPool workers, Path spoolDir) {
+    this.textLimit = textLimit;
+    this.workers = workers;
+    this.spoolDir = spoolDir == null ? Paths.get(System.getProperty("java.io.tmpdir")) : spoolDir;
+  }
+
+  public int getTextLimit() {
+    return textLimit;
+  }
+
+  /**
+   * Detects the type of the content. The stream must support mark and reset;
+   * it is reset to where it was.
+   *
+   * @param in
+   * @param fileName
+   *          the file name, used as a hint
+   * @return the MIME type of the content
+   * @throws IOException
+   */
+  public String detect(InputStream in, String fileName) throws IOException {
+    Metadata metadata = new Metadata();
+    metadata.set(Metadata.RESOURCE_NAME_KEY, fileName);
+    return tika.detect(in, metadata);
+  }
+
+  /**
+   * Extracts the text of the content, in UTF-8. The streams are not closed,
+   * but the content is read to the end in forked mode.
+   *
+   * @param in
+   * @param fileType
+   *          the detected MIME type of the content
+   * @param text
+   *          the stream the text is written to
+   * @return the outcome of the extraction; unless the text was extracted, the
+   *         text written is undefined
+   * @throws IOException
+   *           if the content cannot be read or the text cannot be written
+   */
+  public Outcome extract(InputStream in, String fileType, OutputStream text) throws IOException {
+    if (workers == null) {
+      return extractInProcess(in, fileType, text);
+    }
+
+    Path contentFile = null;
+    Path textFile = null;
+    try {
+      contentFile = Files.createTempFile(spoolDir, "drive-extract", ".bin");
+      textFile = Files.createTempFile(spoolDir, "drive-extract", ".txt");
+      Files.copy(in, contentFile, StandardCopyOption.REPLACE_EXISTING);
+      long start = System.nanoTime();
+      Outcome outcome = workers.extract(contentFile, fileType, textFile);
+      record(fileType, System.nanoTime() - start, outcome != Outcome.EXTRACTED);
+      if (outcome == Outcome.EXTRACTED) {
+        Files.copy(textFile, text);
+      }
+      return outcome;
+    } finally {
+      deleteQuietly(contentFile);
+      deleteQuietly(textFile);
+    }
+  }
+
+  /**
+   * Checks that the workers can be started and answer, by extracting the text
+   * of an empty file. Does nothing in-process.
+   *
+   * @throws IOException
+   *           if the workers do not answer, e.g. because their class path does
+   *           not hold this bundle and Tika
+   */
+  public void checkWorkers() throws IOException {
+    if (workers != null
+        && extract(new ByteArrayInputStream(new byte[0]), "text/plain", new NullOutputStream()) == Outcome.ABORTED) {
+      throw new IOException("Text extraction workers do not answer, check their class path");
+    }
+  }
+
+  private void deleteQuietly(Path file) {
+    if (file != null) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        log.warn("Unable to delete temporary file " + file + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private Outcome extractInProcess(InputStream in, String fileType, OutputStream text) throws IOException {
+    long start = System.nanoTime();
+    boolean failed = false;
+    CountingOutputStream counter = new CountingOutputStream(new CloseShieldOutputStream(text));
+    LimitedWriteOutContentHandler limited = null;
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.UTF_8))) {
+      limited = new LimitedWriteOutContentHandler(writer, textLimit);
+      getParser(fileType).parse(in, new BodyContentHandler(limited), new Metadata(), new ParseContext());
+    } catch (Exception e) {
+      if (limited != null && limited.isLimitReached()) {
+        log.debug("Text of file of type " + fileType + " truncated at " + textLimit + " characters");
+      } else {
+        log.info("Error:" + e.getMessage() + " for file of type :" + fileType);
+        failed = true;
+      }
+    } finally {
+      record(fileType, System.nanoTime() - start, failed);
+    }
+
+    if (!failed && counter.getByteCount() == 0) {
+      log.info("Error Extracting file content for fileType: " + fileType);
+    }
+    return failed ? Outcome.FAILED : Outcome.EXTRACTED;
+  }
+
+  private Parser getParser(String fileType) {
+    if (fileType.equalsIgnoreCase("text/plain")) {
+      return txtParser;
+    } else if (fileType.equalsIgnoreCase("application/pdf")) {
+      return pdfParser;
+    }
+    return autoDetectParser;
+  }
+
+  private void record(String fileType, long elapsed, boolean failed) {
+    TypeStats typeStats = stats.get(fileType);
+    if (typeStats == null) {
+      stats.putIfAbsent(fileType, new TypeStats());
+      typeStats = stats.get(fileType);
+    }
+    typeStats.record(elapsed, failed);
+    if (extractions.incrementAndGet() % STATS_INTERVAL == 0) {
+      log.info("Text extraction time by file type: " + getStats()
+          + (workers == null ? "" : "; workers: " + workers.getStats()));
+    }
+  }
+
+  /**
+   * @return the number of extractions, failures, total and maximum time of
+   *         each file type, by decreasing total time
+   */
+  public String getStats() {
+    List<Map.Entry<String, TypeStats>> entries = new ArrayList<>(stats.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, TypeStats>>() {
+      @Override
+      public int compare(Map.Entry<String, TypeStats> a, Map.Entry<String, TypeStats> b) {
+        return Long.compare(b.getValue().nanos.get(), a.getValue().nanos.get());
+      }
+    });
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<String, TypeStats> entry : entries) {
+      TypeStats typeStats = entry.getValue();
+      if (builder.length() > 0) {
+        builder.append("; ");
+      }
+      builder.append(String.format("%s: count=%d, failed=%d, total=%dms, max=%dms", entry.getKey(),
+          typeStats.count.get(), typeStats.failures.get(), TimeUnit.NANOSECONDS.toMillis(typeStats.nanos.get()),
+          TimeUnit.NANOSECONDS.toMillis(typeStats.maxNanos.get())));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Writes the text to a writer, stopping the parsing once the text limit is
+   * reached. The write limit of Tika 0.7 is only available for text collected
+   * in memory.
+   */
+  private static class LimitedWriteOutContentHandler extends DefaultHandler {
+    private final Writer writer;
+    private final int limit;
+    private int written;
+    private boolean limitReached;
+
+    /**
+     * @param writer
+     * @param limit
+     *          the maximum number of characters to write, or -1 for no limit
+     */
+    LimitedWriteOutContentHandler(Writer writer, int limit) {
+      this.writer = writer;
+      this.limit = limit;
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+      try {
+        if (limit >= 0 && written + length > limit) {
+          writer.write(ch, start, limit - written);
+          written = limit;
+          limitReached = true;
+          throw new SAXException("Text limit of " + limit + " characters reached");
+        }
+        writer.write(ch, start, length);
+        written += length;
+      } catch (IOException e) {
+        throw new SAXException("Error writing extracted text", e);
+      }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+      characters(ch, start, length);
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+      try {
+        writer.flush();
+      } catch (IOException e) {
+        throw new SAXException("Error writing extracted text", e);
+      }
+    }
+
+    /**
+     * @return true if the parsing was stopped by the text limit
+     */
+    boolean isLimitReached() {
+      return limitReached;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package edu.umd.lib.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Main class of the worker JVMs started by {@link TextExtractionWorkerPool}.
+ * A worker reads extraction requests from its standard input, each made of
+ * the path of the content file, the file type and the path of the text file,
+ * extracts the text in-process and answers with a status on its standard
+ * output. Anything else written to the standard output is redirected to the
+ * standard error, so that it does not corrupt the answers.
+ * <p>
+ * The worker exits when its standard input is closed, or on an error such as
+ * running out of memory, in which case the pool starts a new one.
+ *
+ * @since 2.0
+ */
+public class TextExtractionWorker {
+
+  /** Status answered when the text was extracted */
+  static final String STATUS_OK = "OK";
+
+  /**
+   * @param args
+   *          the maximum number of characters of text to extract
+   * @throws IOException
+   */
+  public static void main(String[] args) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+    System.setOut(System.err);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+    TextExtractionService extractor = new TextExtractionService(Integer.parseInt(args[0]));
+
+    while (true) {
+      String contentFile;
+      try {
+        contentFile = in.readUTF();
+      } catch (EOFException e) {
+        return;
+      }
+      String fileType = in.readUTF();
+      String textFile = in.readUTF();
+
+      String status;
+      try (InputStream content = new BufferedInputStream(Files.newInputStream(Paths.get(contentFile)));
+          OutputStream text = new BufferedOutputStream(Files.newOutputStream(Paths.get(textFile)))) {
+        TextExtractionService.Outcome outcome = extractor.extract(content, fileType, text);
+        status = outcome == TextExtractionService.Outcome.EXTRACTED ? STATUS_OK : "Unable to parse";
+      } catch (Error e) {
+        System.err.println("Text extraction worker exiting: " + e);
+        System.exit(1);
+        return;
+      } catch (Exception e) {
+        status = "Error: " + e.getMessage();
+      }
+      out.writeUTF(status);
+      out.flush();
+    }
+  }
+}
@@ -0,0 +1,214 @@
+package edu.umd.lib.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Pool of worker JVMs extracting text out of process, so that a file that
+ * makes its parser spin or run out of memory cannot stall the routes or take
+ * down the container. Each extraction has a wall clock timeout, after which
+ * its worker is killed; the heap of the workers is capped. Workers that time
+ * out or exit are replaced by new ones on demand.
+ * <p>
+ * The workers run {@link TextExtractionWorker} with the configured class
+ * path, which must hold this bundle and Tika with its parsers. This class is
+ * thread-safe.
+ *
+ * @since 2.0
+ */
+public class TextExtractionWorkerPool {
+
+  private static Logger log = Logger.getLogger(TextExtractionWorkerPool.class);
+
+  private final List<String> command = new ArrayList<>();
+  private final long timeoutMillis;
+  private final Semaphore permits;
+  private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+  /** All running workers, idle or busy */
+  private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService watchdog;
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong crashes = new AtomicLong();
+  private volatile boolean closed;
+
+  /** A running worker JVM */
+  private static class Worker {
+    private final Process process;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private volatile boolean timedOut;
+
+    Worker(Process process) {
+      this.process = process;
+      this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+      this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+    }
+
+    void destroy() {
+      process.destroyForcibly();
+    }
+  }
+
+  /**
+   * @param size
+   *          the maximum number of workers
+   * @param timeoutMillis
+   *          the maximum time of an extraction
+   * @param heap
+   *          the maximum heap of a worker, as given to -Xmx, e.g. 512m
+   * @param classpath
+   *          the class path of the workers
+   * @param textLimit
+   *          the maximum number of characters of text to extract, or -1 for
+   *          no limit
+   */
+  public TextExtractionWorkerPool(int size, long timeoutMillis, String heap, String classpath, int textLimit) {
+    this.timeoutMillis = timeoutMillis;
+    this.permits = new Semaphore(size, true);
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    command.add("-Xmx" + heap);
+    command.add("-XX:+ExitOnOutOfMemoryError");
+    command.add("-cp");
+    command.add(classpath);
+    command.add(TextExtractionWorker.class.getName());
+    command.add(String.valueOf(textLimit));
+
+    watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "TextExtractionWatchdog");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Extracts the text of a file in a worker
+   *
+   * @param contentFile
+   * @param fileType
+   * @param textFile
+   * @return the outcome of the extraction
+   * @throws IOException
+   *           if no worker can be started
+   */
+  public TextExtractionService.Outcome extract(Path contentFile, String fileType, Path textFile) throws IOException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a text extraction worker", e);
+    }
+
+    Worker worker = null;
+    boolean reusable = false;
+    ScheduledFuture<?> kill = null;
+    try {
+      worker = idle.poll();
+      if (worker == null) {
+        worker = start();
+      }
+      final Worker current = worker;
+      kill = watchdog.schedule(new Runnable() {
+        @Override
+        public void run() {
+          current.timedOut = true;
+          current.destroy();
+        }
+      }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+      worker.out.writeUTF(contentFile.toString());
+      worker.out.writeUTF(fileType);
+      worker.out.writeUTF(textFile.toString());
+      worker.out.flush();
+      String status = worker.in.readUTF();
+      reusable = true;
+      if (!TextExtractionWorker.STATUS_OK.equals(status)) {
+        log.info(status + " for file of type :" + fileType);
+        return TextExtractionService.Outcome.FAILED;
+      }
+      return TextExtractionService.Outcome.EXTRACTED;
+    } catch (IOException e) {
+      if (worker == null) {
+        throw e;
+      }
+      if (worker.timedOut) {
+        timeouts.incrementAndGet();
+        log.warn("Text extraction of file of type " + fileType + " timed out after " + timeoutMillis + "ms");
+      } else {
+        crashes.incrementAndGet();
+        log.warn("Text extraction worker failed on file of type " + fileType + ": " + e.getMessage());
+      }
+      return TextExtractionService.Outcome.ABORTED;
+    } finally {
+      if (kill != null) {
+        kill.cancel(false);
+      }
+      if (worker != null) {
+        if (reusable && !worker.timedOut && !closed) {
+          idle.offer(worker);
+        } else {
+          workers.remove(worker);
+          worker.destroy();
+        }
+      }
+      permits.release();
+    }
+  }
+
+  private Worker start() throws IOException {
+    if (closed) {
+      throw new IOException("Text extraction worker pool is closed");
+    }
+    ProcessBuilder builder = new ProcessBuilder(command);
+    builder.redirectError(Redirect.INHERIT);
+    log.debug("Starting text extraction worker: " + command);
+    Worker worker = new Worker(builder.start());
+    workers.add(worker);
+    return worker;
+  }
+
+  /**
+   * Kills all the workers, including those busy with an extraction, which then
+   * fails
+   */
+  public void close() {
+    closed = true;
+    idle.clear();
+    for (Worker worker : workers) {
+      worker.destroy();
+    }
+    workers.clear();
+    watchdog.shutdownNow();
+    log.info("Text extraction worker pool closed");
+  }
+
+  /**
+   * @return the number of timed out and failed extractions, for logging
+   */
+  public String getStats() {
+    return "timeouts=" + timeouts.get() + ", crashes=" + crashes.get();
+  }
+}
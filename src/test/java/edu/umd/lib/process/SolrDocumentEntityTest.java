@@ -0,0 +1,116 @@
+package edu.umd.lib.process;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import edu.umd.lib.services.SpillBuffer;
+
+public class SolrDocumentEntityTest {
+
+  private static SpillBuffer buffer(String value) throws IOException {
+    SpillBuffer buffer = SpillBuffer.defaultFactory().create(".txt");
+    buffer.write(value.getBytes(StandardCharsets.UTF_8));
+    buffer.close();
+    return buffer;
+  }
+
+  private static String write(SolrDocumentEntity entity) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    entity.writeTo(out);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static String streamedValue(String value) throws Exception {
+    SpillBuffer text = buffer(value);
+    try {
+      String json = write(new SolrDocumentEntity(new JSONObject().put("id", "1"), false)
+          .addStreamedField("content", text));
+      return new JSONArray(json).getJSONObject(0).getString("content");
+    } finally {
+      text.delete();
+    }
+  }
+
+  @Test
+  public void testQuotesAndBackslashes() throws Exception {
+    String value = "say \"hi\" to C:\\temp\\";
+    assertEquals(value, streamedValue(value));
+  }
+
+  @Test
+  public void testNamedControlCharacters() throws Exception {
+    String value = "a\nb\rc\td\be\ff";
+    assertEquals(value, streamedValue(value));
+  }
+
+  @Test
+  public void testOtherControlCharacters() throws Exception {
+    StringBuilder value = new StringBuilder();
+    for (char c = 0; c < ' '; c++) {
+      value.append(c);
+    }
+    value.append('\u007f');
+    assertEquals(value.toString(), streamedValue(value.toString()));
+  }
+
+  @Test
+  public void testControlCharactersAreEscaped() throws Exception {
+    SpillBuffer text = buffer("\u0000\u001f");
+    try {
+      String json = write(new SolrDocumentEntity(new JSONObject(), false).addStreamedField("content", text));
+      assertEquals("[{\"content\":\"\\u0000\\u001f\"}]", json);
+    } finally {
+      text.delete();
+    }
+  }
+
+  @Test
+  public void testSurrogatePairs() throws Exception {
+    String value = "emoji \ud83d\ude00 and \ud834\udd1e";
+    assertEquals(value, streamedValue(value));
+  }
+
+  @Test
+  public void testSurrogatePairAcrossReadBuffers() throws Exception {
+    StringBuilder value = new StringBuilder();
+    for (int i = 0; i < 8191; i++) {
+      value.append('x');
+    }
+    value.append("\ud83d\ude00");
+    assertEquals(value.toString(), streamedValue(value.toString()));
+  }
+
+  @Test
+  public void testLoneSurrogatesAreReplaced() throws Exception {
+    // Lone surrogates cannot be encoded in UTF-8, so the buffer holds '?'
+    assertEquals("a?b?", streamedValue("a\ud83db\ude00"));
+  }
+
+  @Test
+  public void testNullStreamedField() throws Exception {
+    String json = write(new SolrDocumentEntity(new JSONObject().put("id", "1"), false)
+        .addStreamedField("content", null));
+    assertEquals(JSONObject.NULL, new JSONArray(json).getJSONObject(0).get("content"));
+  }
+
+  @Test
+  public void testAtomicUpdate() throws Exception {
+    SpillBuffer text = buffer("new \"text\"");
+    try {
+      String json = write(new SolrDocumentEntity(new JSONObject().put("id", "1"), true)
+          .addStreamedField("content", text));
+      JSONObject doc = new JSONObject(json).getJSONObject("add").getJSONObject("doc");
+      assertEquals("1", doc.getString("id"));
+      assertEquals("new \"text\"", doc.getJSONObject("content").getString("set"));
+    } finally {
+      text.delete();
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package edu.umd.lib.services;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.umd.lib.services.IngestPolicy.Action;
+
+public class IngestPolicyTest {
+
+  private static final long ALLOWED = 1000;
+
+  @Test
+  public void testEmptyPolicy() {
+    IngestPolicy policy = new IngestPolicy("", ALLOWED, -1);
+    assertEquals(Action.FULL, policy.getAction("application/pdf", 10L));
+    assertEquals(Action.FULL, policy.getAction("video/mp4", 10L));
+    assertEquals(Action.FULL, new IngestPolicy(null, ALLOWED, -1).getAction("video/mp4", 10L));
+  }
+
+  @Test
+  public void testWildcard() {
+    IngestPolicy policy = new IngestPolicy("video/*:metadata", ALLOWED, -1);
+    assertEquals(Action.METADATA, policy.getAction("video/mp4", 10L));
+    assertEquals(Action.METADATA, policy.getAction("video/quicktime", 10L));
+    assertEquals(Action.FULL, policy.getAction("audio/mpeg", 10L));
+    assertEquals(Action.FULL, policy.getAction("videox/mp4", 10L));
+  }
+
+  @Test
+  public void testFirstMatchWins() {
+    IngestPolicy policy = new IngestPolicy("image/png:full,image/*:metadata", ALLOWED, -1);
+    assertEquals(Action.FULL, policy.getAction("image/png", 10L));
+    assertEquals(Action.METADATA, policy.getAction("image/jpeg", 10L));
+
+    policy = new IngestPolicy("image/*:metadata,image/png:full", ALLOWED, -1);
+    assertEquals(Action.METADATA, policy.getAction("image/png", 10L));
+  }
+
+  @Test
+  public void testCatchAll() {
+    IngestPolicy policy = new IngestPolicy("application/pdf:extract,*:metadata", ALLOWED, -1);
+    assertEquals(Action.EXTRACT, policy.getAction("application/pdf", 10L));
+    assertEquals(Action.METADATA, policy.getAction("text/plain", 10L));
+    assertEquals(Action.METADATA, new IngestPolicy("*/*:metadata", ALLOWED, -1).getAction("text/plain", 10L));
+  }
+
+  @Test
+  public void testCaseInsensitive() {
+    IngestPolicy policy = new IngestPolicy(" Video/* : Metadata ", ALLOWED, -1);
+    assertEquals(Action.METADATA, policy.getAction("VIDEO/MP4", 10L));
+  }
+
+  @Test
+  public void testInvalidRulesIgnored() {
+    IngestPolicy policy = new IngestPolicy("video/*,image/*:skip,,:metadata,audio/*:extract", ALLOWED, -1);
+    assertEquals(Action.FULL, policy.getAction("video/mp4", 10L));
+    assertEquals(Action.FULL, policy.getAction("image/png", 10L));
+    assertEquals(Action.EXTRACT, policy.getAction("audio/mpeg", 10L));
+  }
+
+  @Test
+  public void testAllowedFileSize() {
+    IngestPolicy policy = new IngestPolicy("text/plain:metadata", ALLOWED, -1);
+    assertEquals(Action.FULL, policy.getAction("application/pdf", ALLOWED - 1));
+    assertEquals(Action.EXTRACT, policy.getAction("application/pdf", ALLOWED));
+    assertEquals(Action.METADATA, policy.getAction("text/plain", ALLOWED));
+    assertEquals(Action.FULL, policy.getAction("application/pdf", null));
+  }
+
+  @Test
+  public void testMaxExtractSize() {
+    IngestPolicy policy = new IngestPolicy("application/pdf:extract", ALLOWED, 5000);
+    assertEquals(Action.EXTRACT, policy.getAction("application/pdf", 5000L));
+    assertEquals(Action.METADATA, policy.getAction("application/pdf", 5001L));
+    assertEquals(Action.METADATA, policy.getAction("text/plain", 5001L));
+    assertEquals(Action.FULL, policy.getAction("text/plain", null));
+  }
+
+  @Test
+  public void testConfig() {
+    Map<String, String> config = new HashMap<>();
+    config.put("ingestPolicy", "video/*:metadata");
+    config.put("allowedFileSize", "1000");
+    IngestPolicy policy = new IngestPolicy(config);
+    assertEquals(Action.METADATA, policy.getAction("video/mp4", 10L));
+    assertEquals(Action.EXTRACT, policy.getAction("text/plain", 1000000000L));
+  }
+}